@@ -5,8 +5,13 @@ import com.example.hcm25_cpl_ks_java_01_lms.location.Location;
 import com.example.hcm25_cpl_ks_java_01_lms.user.User;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.util.List;
+import java.util.Locale;
 
 @AllArgsConstructor
 @NoArgsConstructor
@@ -14,7 +19,16 @@ import java.util.List;
 @Setter
 @Entity
 @Builder
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = DepartmentCacheConfig.REGION)
+@DynamicUpdate
+@Table(indexes = {
+        @Index(name = "idx_department_user_count", columnList = "user_count"),
+        @Index(name = "idx_department_course_count", columnList = "course_count"),
+        @Index(name = "ux_department_normalized_name", columnList = "normalized_name", unique = true)
+})
 public class Department {
+    static final int MEMBER_BATCH_SIZE = 100;
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -23,11 +37,20 @@ public class Department {
     @Column(nullable = false, length = 255)
     private String name;
 
+    // Tên đã chuẩn hóa (trim, gộp khoảng trắng, chữ thường); unique index trên cột này là nơi
+    // duy nhất kiểm tra trùng tên, kể cả khi nhiều request ghi cùng lúc
+    @Setter(AccessLevel.NONE)
+    @Column(name = "normalized_name", length = 255)
+    private String normalizedName;
+
     @ManyToOne
     @JoinColumn(name = "location_id", nullable = true)
     private Location location;
 
+    // Export duyệt từng chunk và đọc tên thành viên của mọi dòng: nạp collection theo lô
+    // thay vì một query cho mỗi department
     @ManyToMany
+    @BatchSize(size = MEMBER_BATCH_SIZE)
     @JoinTable(
             name = "department_users",
             joinColumns = @JoinColumn(name = "department_id"),
@@ -36,6 +59,7 @@ public class Department {
     private List<User> users;
 
     @ManyToMany
+    @BatchSize(size = MEMBER_BATCH_SIZE)
     @JoinTable(
             name = "department_courses",
             joinColumns = @JoinColumn(name = "department_id"),
@@ -43,6 +67,41 @@ public class Department {
     )
     private List<Course> courses;
 
+    // Số thành viên được lưu sẵn và cập nhật cùng mọi thay đổi trên bảng nối
+    // (DynamicUpdate để lần update tên/location không ghi đè giá trị cũ trong bộ nhớ)
+    @Column(name = "user_count", nullable = false, columnDefinition = "bigint default 0")
+    private long userCount;
+
+    @Column(name = "course_count", nullable = false, columnDefinition = "bigint default 0")
+    private long courseCount;
+
+    // Tăng ở mọi lần ghi, kể cả các câu lệnh JDBC (thành viên, import, đếm lại); dùng làm ETag của từng department
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
+    public void setName(String name) {
+        this.name = name;
+        this.normalizedName = normalizeName(name);
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateNormalizedName() {
+        normalizedName = normalizeName(name);
+    }
+
+    /**
+     * Key used by the unique index: two names that only differ in case or spacing
+     * are the same department.
+     */
+    public static String normalizeName(String name) {
+        if (name == null) {
+            return null;
+        }
+        return name.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
     @Override
     public String toString() {
         return name;
@@ -10,20 +10,27 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/departments")
@@ -35,71 +42,145 @@ public class DepartmentAPIController {
     private final LocationService locationService;
     private final UserService userService;
     private final CourseService courseService;
+    private final DepartmentImportJobService departmentImportJobService;
+    private final DepartmentParallelExporter departmentParallelExporter;
+    private final DepartmentTextExporter departmentTextExporter;
+    private final DepartmentBulkLoader departmentBulkLoader;
+    private final DepartmentMembershipService departmentMembershipService;
+    private final DepartmentWorkLimiter departmentWorkLimiter;
+    private final DepartmentDataVersion departmentDataVersion;
+    private final DepartmentExportCache departmentExportCache;
 
     public DepartmentAPIController(DepartmentService departmentService, LocationService locationService,
-                                UserService userService, CourseService courseService) {
+                                UserService userService, CourseService courseService,
+                                DepartmentImportJobService departmentImportJobService,
+                                DepartmentParallelExporter departmentParallelExporter,
+                                DepartmentTextExporter departmentTextExporter,
+                                DepartmentBulkLoader departmentBulkLoader,
+                                DepartmentMembershipService departmentMembershipService,
+                                DepartmentWorkLimiter departmentWorkLimiter,
+                                DepartmentDataVersion departmentDataVersion,
+                                DepartmentExportCache departmentExportCache) {
         this.departmentService = departmentService;
         this.locationService = locationService;
         this.userService = userService;
         this.courseService = courseService;
+        this.departmentImportJobService = departmentImportJobService;
+        this.departmentParallelExporter = departmentParallelExporter;
+        this.departmentTextExporter = departmentTextExporter;
+        this.departmentBulkLoader = departmentBulkLoader;
+        this.departmentMembershipService = departmentMembershipService;
+        this.departmentWorkLimiter = departmentWorkLimiter;
+        this.departmentDataVersion = departmentDataVersion;
+        this.departmentExportCache = departmentExportCache;
     }
 
     @GetMapping
-    @Operation(summary = "Get all departments", description = "Get a paginated list of departments with optional filtering")
+    @Operation(summary = "Get all departments", description = "Get a paginated list of departments with optional filtering. " +
+            "Pass fields=id,name,locationId,locationName,userCount,courseCount to read only those columns")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved departments",
-                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = Page.class))),
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DepartmentPageResponse.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified since the response with the given ETag"),
             @ApiResponse(responseCode = "400", description = "Bad request"),
             @ApiResponse(responseCode = "403", description = "Forbidden")
     })
-    public ResponseEntity<Page<Department>> listDepartments(
+    public ResponseEntity<DepartmentPageResponse<?>> listDepartments(
             @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Page size") @RequestParam(defaultValue = "10") int size,
-            @Parameter(description = "Optional search term") @RequestParam(required = false) String searchTerm) {
+            @Parameter(description = "Optional search term") @RequestParam(required = false) String searchTerm,
+            @Parameter(description = "Optional comma-separated field selection") @RequestParam(required = false) String fields,
+            @Parameter(description = "Only departments with at least this many users") @RequestParam(required = false) Long minUsers,
+            @Parameter(description = "Only departments with at least this many courses") @RequestParam(required = false) Long minCourses,
+            @Parameter(description = "Sort, e.g. userCount,desc (id, name, userCount, courseCount)") @RequestParam(required = false) String sort,
+            ServletWebRequest webRequest) {
         try {
-            Page<Department> departments = departmentService.getDepartments(searchTerm, page, size);
-            return ResponseEntity.ok(departments);
+            departmentService.validateListRequest(page, size, fields, minUsers, minCourses, sort);
+            if (notModified(webRequest, departmentDataVersion.etag(departmentDataVersion.current(), null))) {
+                return null;
+            }
+            if (minUsers != null || minCourses != null || sort != null) {
+                return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getDepartmentsByMemberCount(
+                        minUsers != null ? minUsers : 0, minCourses != null ? minCourses : 0, sort, page, size)));
+            }
+            if (fields != null) {
+                return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getDepartmentFields(searchTerm, fields, page, size)));
+            }
+            return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getDepartments(searchTerm, page, size)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/slice")
+    @Operation(summary = "Get departments without total count",
+            description = "Count-free listing with a has-next flag; pass nextAfterId back as afterId to seek the next page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved departments"),
+            @ApiResponse(responseCode = "400", description = "Bad request")
+    })
+    public ResponseEntity<DepartmentSliceResponse> listDepartmentSlice(
+            @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Optional search term") @RequestParam(required = false) String searchTerm,
+            @Parameter(description = "Last id of the previous page, for keyset paging") @RequestParam(required = false) Long afterId,
+            @Parameter(description = "First id of the next page, for keyset paging backwards") @RequestParam(required = false) Long beforeId) {
+        try {
+            Slice<DepartmentSummary> slice = departmentService.getDepartmentSlice(searchTerm, afterId, beforeId, page, size);
+            boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
+            Long nextAfterId = !searching && slice.hasNext()
+                    ? slice.getContent().get(slice.getNumberOfElements() - 1).getId() : null;
+            Long prevBeforeId = !searching && slice.hasPrevious() && slice.hasContent()
+                    ? slice.getContent().get(0).getId() : null;
+            return ResponseEntity.ok(new DepartmentSliceResponse(slice.getContent(), slice.getNumber(), size, slice.hasNext(),
+                    nextAfterId, prevBeforeId, departmentService.getApproximateDepartmentCount()));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
     @GetMapping("/{id}")
-    @Operation(summary = "Get department by ID", description = "Get department details by ID")
+    @Operation(summary = "Get department by ID", description = "Get department details by ID, optionally only the given fields")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved department",
-                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = Department.class))),
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DepartmentDetailResponse.class))),
+            @ApiResponse(responseCode = "304", description = "Not modified since the response with the given ETag"),
+            @ApiResponse(responseCode = "400", description = "Bad request"),
             @ApiResponse(responseCode = "404", description = "Department not found")
     })
-    public ResponseEntity<Department> getDepartmentById(
-            @Parameter(description = "Department ID", required = true) @PathVariable Long id) {
-        Department department = departmentService.getDepartmentById(id);
-        if (department != null) {
-            return ResponseEntity.ok(department);
-        } else {
+    public ResponseEntity<?> getDepartmentById(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Optional comma-separated field selection") @RequestParam(required = false) String fields,
+            ServletWebRequest webRequest) {
+        try {
+            departmentService.validateFields(fields);
+            // So version của dòng trước, không đổi thì trả 304 mà không đọc chi tiết
+            if (notModified(webRequest, departmentDataVersion.rowETag(id, departmentService.getDepartmentVersion(id)))) {
+                return null;
+            }
+            if (fields != null) {
+                return ResponseEntity.ok(departmentService.getDepartmentFields(id, fields));
+            }
+            return ResponseEntity.ok(departmentService.getDepartmentDetail(id));
+        } catch (EntityNotFoundException e) {
             return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     @PostMapping
-    @Transactional
     @Operation(summary = "Create department", description = "Create a new department")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Department created successfully",
-                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = Department.class))),
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DepartmentDetailResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request - validation error or duplicate name")
     })
     public ResponseEntity<?> createDepartment(
             @Parameter(description = "Department data", required = true) @RequestBody Department department) {
         try {
-            // Check if department name already exists
-            if (departmentService.existsByName(department.getName())) {
-                return ResponseEntity.badRequest()
-                        .body("Department name '" + department.getName() + "' already exists");
-            }
-
             Department savedDepartment = departmentService.createDepartment(department);
-            return ResponseEntity.status(HttpStatus.CREATED).body(savedDepartment);
+            return ResponseEntity.status(HttpStatus.CREATED).body(departmentService.getDepartmentDetail(savedDepartment.getId()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -109,7 +190,7 @@ public class DepartmentAPIController {
     @Operation(summary = "Update department", description = "Update an existing department by ID")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Department updated successfully",
-                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = Department.class))),
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = DepartmentDetailResponse.class))),
             @ApiResponse(responseCode = "400", description = "Bad request - validation error"),
             @ApiResponse(responseCode = "404", description = "Department not found")
     })
@@ -122,12 +203,15 @@ public class DepartmentAPIController {
                 return ResponseEntity.notFound().build();
             }
 
-            // Update only specific fields
-            existingDepartment.setName(departmentDetails.getName());
-            existingDepartment.setLocation(departmentDetails.getLocation());
+            // Update only specific fields; users/courses left null so members stay unchanged
+            Department changes = Department.builder()
+                    .id(id)
+                    .name(departmentDetails.getName())
+                    .location(departmentDetails.getLocation())
+                    .build();
 
-            Department updatedDepartment = departmentService.updateDepartment(existingDepartment);
-            return ResponseEntity.ok(updatedDepartment);
+            Department updatedDepartment = departmentService.updateDepartment(changes);
+            return ResponseEntity.ok(departmentService.getDepartmentDetail(updatedDepartment.getId()));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -154,55 +238,323 @@ public class DepartmentAPIController {
         }
     }
 
-    @GetMapping("/export")
-    @Operation(summary = "Export departments to Excel", description = "Export departments to Excel file")
+    @GetMapping("/{id}/users")
+    @Operation(summary = "Get department users", description = "Paginated users of a department, optionally filtered by username or name")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved users"),
+            @ApiResponse(responseCode = "400", description = "Bad request")
+    })
+    public ResponseEntity<DepartmentPageResponse<DepartmentMemberSummary>> getDepartmentUsers(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Optional search term") @RequestParam(required = false) String q) {
+        try {
+            return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getDepartmentUsers(id, q, page, size)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{id}/users/candidates")
+    @Operation(summary = "Get users to add", description = "Paginated users that are not members of the department yet")
+    public ResponseEntity<DepartmentPageResponse<DepartmentMemberSummary>> getUserCandidates(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Optional search term") @RequestParam(required = false) String q) {
+        try {
+            return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getUserCandidates(id, q, page, size)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{id}/courses")
+    @Operation(summary = "Get department courses", description = "Paginated courses of a department, optionally filtered by name")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Excel file generated successfully",
-                    content = @Content(mediaType = "application/vnd.ms-excel")),
-            @ApiResponse(responseCode = "500", description = "Internal server error")
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved courses"),
+            @ApiResponse(responseCode = "400", description = "Bad request")
     })
-    public ResponseEntity<Resource> exportToExcel(
+    public ResponseEntity<DepartmentPageResponse<DepartmentMemberSummary>> getDepartmentCourses(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
             @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
-            @Parameter(description = "Page size") @RequestParam(defaultValue = "10") Integer size) {
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Optional search term") @RequestParam(required = false) String q) {
+        try {
+            return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getDepartmentCourses(id, q, page, size)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{id}/courses/candidates")
+    @Operation(summary = "Get courses to add", description = "Paginated courses that are not assigned to the department yet")
+    public ResponseEntity<DepartmentPageResponse<DepartmentMemberSummary>> getCourseCandidates(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Page number (0-based)") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "Optional search term") @RequestParam(required = false) String q) {
+        try {
+            return ResponseEntity.ok(DepartmentPageResponse.of(departmentService.getCourseCandidates(id, q, page, size)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PostMapping("/{id}/users")
+    @Operation(summary = "Add users to department", description = "Insert only the department_users rows that do not exist yet")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rows added and removed"),
+            @ApiResponse(responseCode = "400", description = "Bad request - unknown user id"),
+            @ApiResponse(responseCode = "404", description = "Department not found")
+    })
+    public ResponseEntity<?> addUsers(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "User IDs", required = true) @RequestBody List<Long> userIds) {
+        return membershipResponse(() -> departmentMembershipService.addUsers(id, userIds));
+    }
+
+    @DeleteMapping("/{id}/users/{userId}")
+    @Operation(summary = "Remove user from department", description = "Delete a single department_users row")
+    public ResponseEntity<?> removeUser(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "User ID", required = true) @PathVariable Long userId) {
+        return membershipResponse(() -> departmentMembershipService.removeUsers(id, List.of(userId)));
+    }
+
+    @PostMapping("/{id}/courses")
+    @Operation(summary = "Add courses to department", description = "Insert only the department_courses rows that do not exist yet")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rows added and removed"),
+            @ApiResponse(responseCode = "400", description = "Bad request - unknown course id"),
+            @ApiResponse(responseCode = "404", description = "Department not found")
+    })
+    public ResponseEntity<?> addCourses(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Course IDs", required = true) @RequestBody List<Long> courseIds) {
+        return membershipResponse(() -> departmentMembershipService.addCourses(id, courseIds));
+    }
+
+    @DeleteMapping("/{id}/courses/{courseId}")
+    @Operation(summary = "Remove course from department", description = "Delete a single department_courses row")
+    public ResponseEntity<?> removeCourse(
+            @Parameter(description = "Department ID", required = true) @PathVariable Long id,
+            @Parameter(description = "Course ID", required = true) @PathVariable Long courseId) {
+        return membershipResponse(() -> departmentMembershipService.removeCourses(id, List.of(courseId)));
+    }
+
+    @PostMapping("/memberships")
+    @Operation(summary = "Apply membership changes", description = "Apply a batch of user/course additions and removals " +
+            "for several departments atomically: either every change is applied or none")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rows added and removed"),
+            @ApiResponse(responseCode = "400", description = "Bad request - nothing was changed"),
+            @ApiResponse(responseCode = "404", description = "Department not found - nothing was changed")
+    })
+    public ResponseEntity<?> applyMembershipChanges(
+            @Parameter(description = "Membership changes", required = true) @RequestBody List<DepartmentMembershipChange> changes) {
+        return membershipResponse(() -> departmentMembershipService.applyChanges(changes));
+    }
+
+    private static ResponseEntity<?> membershipResponse(Supplier<DepartmentMembershipResult> change) {
+        try {
+            return ResponseEntity.ok(change.get());
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping("/export")
+    @Operation(summary = "Export departments", description = "Export departments to Excel, or stream all departments as CSV/NDJSON " +
+            "when format=csv|ndjson or the Accept header asks for text/csv or application/x-ndjson (gzip if accepted)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export generated successfully",
+                    content = {@Content(mediaType = "application/vnd.ms-excel"), @Content(mediaType = "text/csv"),
+                            @Content(mediaType = "application/x-ndjson")}),
+            @ApiResponse(responseCode = "304", description = "Not modified since the export with the given ETag"),
+            @ApiResponse(responseCode = "400", description = "Unsupported export format or invalid paging"),
+            @ApiResponse(responseCode = "500", description = "Internal server error"),
+            @ApiResponse(responseCode = "503", description = "Too many exports/imports in progress")
+    })
+    public void exportToExcel(
+            @Parameter(description = "Page number (0-based), Excel only") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size, Excel only") @RequestParam(defaultValue = "10") Integer size,
+            @Parameter(description = "Export format: xlsx, csv or ndjson") @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            ServletWebRequest webRequest, HttpServletResponse response) throws IOException {
+        // Đọc stamp trước khi đọc dữ liệu để ETag không bao giờ mới hơn nội dung
+        long stamp = departmentDataVersion.current();
+        DepartmentTextExporter.Format textFormat;
         try {
-            if (size == null) {
-                // Export all departments if size is not specified
-                List<Department> departments = departmentService.getAllDepartments("",page,size).getContent();
-                ByteArrayInputStream in = departmentService.exportDepartmentsToExcel(departments);
-                
-                HttpHeaders headers = new HttpHeaders();
-                headers.add("Content-Disposition", "attachment; filename=departments.xlsx");
-
-                return ResponseEntity
-                        .ok()
-                        .headers(headers)
-                        .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                        .body(new InputStreamResource(in));
-            } else {
-                // Export paginated departments if size is specified
-                Page<Department> departments = departmentService.getDepartments(null, page, size);
-                ByteArrayInputStream in = departmentService.exportDepartmentsToExcel(departments.getContent());
-                
-                HttpHeaders headers = new HttpHeaders();
-                headers.add("Content-Disposition", "attachment; filename=departments.xlsx");
-
-                return ResponseEntity
-                        .ok()
-                        .headers(headers)
-                        .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                        .body(new InputStreamResource(in));
+            textFormat = resolveTextFormat(format, accept);
+            if (textFormat == null && size != null && (page < 0 || size <= 0)) {
+                throw new IllegalArgumentException("Invalid page or size parameters");
             }
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+            return;
+        }
+        try {
+            boolean gzip = textFormat != null && acceptsGzip(acceptEncoding);
+            String key = textFormat != null ? textFormat.getExtension() : "xlsx-" + page + "-" + size;
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+            if (notModified(webRequest, departmentDataVersion.etag(stamp, gzip ? key + "-gzip" : key))) {
+                return;
+            }
+            if (textFormat != null) {
+                exportText(textFormat, gzip, key, stamp, response);
+                return;
+            }
+
+            response.setContentType("application/vnd.ms-excel");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=departments.xlsx");
+            departmentExportCache.serve(key, stamp, response.getOutputStream(), out -> {
+                try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire()) {
+                    if (size == null) {
+                        // Export all departments if size is not specified
+                        departmentService.exportAllDepartmentsToExcel(out);
+                    } else {
+                        // Export paginated departments if size is specified
+                        List<Department> departments = departmentService.getAllDepartments(null, page, size).getContent();
+                        departmentService.exportDepartmentsToExcel(departments, out);
+                    }
+                }
+            });
+        } catch (DepartmentBusyException e) {
+            busy(response, e);
+        } catch (Exception e) {
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        }
+    }
+
+    private void exportText(DepartmentTextExporter.Format format, boolean gzip, String key, long stamp,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType(format.getContentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=departments." + format.getExtension());
+        DepartmentExportCache.ArtifactWriter writer = out -> {
+            try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire()) {
+                departmentTextExporter.export(format, out);
+            }
+        };
+        // File cache giữ bản chưa nén, gzip được áp dụng khi gửi
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            // finish() thay vì close(): khi lỗi, response chưa bị commit và vẫn có thể trả 503/500
+            GZIPOutputStream gzipOut = new GZIPOutputStream(response.getOutputStream(), 64 * 1024);
+            departmentExportCache.serve(key, stamp, gzipOut, writer);
+            gzipOut.finish();
+        } else {
+            departmentExportCache.serve(key, stamp, response.getOutputStream(), writer);
+        }
+    }
+
+    /**
+     * Sets the ETag and answers 304 when it matches {@code If-None-Match}. Clients may keep the
+     * response but must revalidate it on every use.
+     */
+    private static boolean notModified(ServletWebRequest webRequest, String etag) {
+        if (webRequest.getResponse() != null) {
+            webRequest.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+        }
+        return webRequest.checkNotModified(etag);
+    }
+
+    /**
+     * Whether {@code Accept-Encoding} allows gzip: an explicit {@code gzip} entry wins over
+     * {@code *}, and either one with {@code q=0} refuses it.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double wildcard = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            if (!coding.equals("gzip") && !coding.equals("x-gzip") && !coding.equals("*")) {
+                continue;
+            }
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (!coding.equals("*")) {
+                return quality > 0;
+            }
+            wildcard = quality;
+        }
+        return wildcard != null && wildcard > 0;
+    }
+
+    private static DepartmentTextExporter.Format resolveTextFormat(String format, String accept) {
+        if (format != null) {
+            switch (format.toLowerCase()) {
+                case "csv":
+                    return DepartmentTextExporter.Format.CSV;
+                case "ndjson":
+                    return DepartmentTextExporter.Format.NDJSON;
+                case "xlsx":
+                    return null;
+                default:
+                    throw new IllegalArgumentException("Unsupported export format: " + format);
+            }
+        }
+        if (accept != null) {
+            if (accept.contains(DepartmentTextExporter.Format.CSV.getContentType())) {
+                return DepartmentTextExporter.Format.CSV;
+            }
+            if (accept.contains(DepartmentTextExporter.Format.NDJSON.getContentType())) {
+                return DepartmentTextExporter.Format.NDJSON;
+            }
+        }
+        return null;
+    }
+
+    @GetMapping("/export/parallel")
+    @Operation(summary = "Export all departments in parallel",
+            description = "Export all departments as a zip of .xlsx parts, one per id range, written concurrently")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Zip file generated successfully",
+                    content = @Content(mediaType = "application/zip")),
+            @ApiResponse(responseCode = "500", description = "Internal server error"),
+            @ApiResponse(responseCode = "503", description = "Too many exports/imports in progress")
+    })
+    public void exportToExcelParallel(HttpServletResponse response) throws IOException {
+        // Mỗi worker giữ một connection nên số worker bằng số permit thực sự được cấp
+        try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire(departmentParallelExporter.getParallelism())) {
+            response.setContentType("application/zip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=departments.zip");
+            departmentParallelExporter.exportZip(response.getOutputStream(), permit.getPermits());
+        } catch (DepartmentBusyException e) {
+            busy(response, e);
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
 
     @PostMapping("/import")
-    @Transactional
     @Operation(summary = "Import departments from Excel", description = "Import departments from an Excel file")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Departments imported successfully"),
-            @ApiResponse(responseCode = "400", description = "Bad request - invalid file format or empty file")
+            @ApiResponse(responseCode = "400", description = "Bad request - invalid file format or empty file"),
+            @ApiResponse(responseCode = "503", description = "Too many exports/imports in progress")
     })
     public ResponseEntity<?> importExcel(
             @Parameter(description = "Excel file to import", required = true) @RequestParam("file") MultipartFile file) {
@@ -214,14 +566,109 @@ public class DepartmentAPIController {
                 return ResponseEntity.badRequest().body("Only Excel files (.xlsx, .xls) are supported");
             }
 
-            List<Department> departments = DepartmentExcelImporter.importDepartments(file.getInputStream());
-            departmentService.saveAllFromExcel(departments);
-            return ResponseEntity.ok("Data imported successfully");
+            DepartmentImportResult result;
+            try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire()) {
+                result = departmentService.importFromExcel(file.getInputStream());
+            }
+            if (!result.getRowErrors().isEmpty()) {
+                return ResponseEntity.ok("Data imported successfully: " + result + ", row errors: " + result.getRowErrors());
+            }
+            return ResponseEntity.ok("Data imported successfully: " + result);
+        } catch (DepartmentBusyException e) {
+            return busyResponse(e);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Failed to import: " + e.getMessage());
         }
     }
 
+    @PostMapping(value = "/import/bulk", consumes = {"text/csv", "application/x-ndjson"})
+    @Operation(summary = "Bulk import departments from CSV or NDJSON",
+            description = "Stream a CSV (header: name, location, users, courses) or NDJSON request body " +
+                    "into staging tables and merge it set-based; gzip request bodies are accepted")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Departments imported successfully"),
+            @ApiResponse(responseCode = "400", description = "Bad request - malformed or empty body"),
+            @ApiResponse(responseCode = "503", description = "Too many exports/imports in progress")
+    })
+    public ResponseEntity<?> bulkImport(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            HttpServletRequest request) {
+        DepartmentTextExporter.Format format = contentType.startsWith(DepartmentTextExporter.Format.CSV.getContentType())
+                ? DepartmentTextExporter.Format.CSV : DepartmentTextExporter.Format.NDJSON;
+        try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire();
+             InputStream body = "gzip".equalsIgnoreCase(contentEncoding)
+                ? new GZIPInputStream(request.getInputStream(), 64 * 1024) : request.getInputStream()) {
+            DepartmentImportResult result = departmentBulkLoader.load(format, body);
+            return ResponseEntity.ok(result);
+        } catch (DepartmentBusyException e) {
+            return busyResponse(e);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Failed to import: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/import/jobs")
+    @Operation(summary = "Start an asynchronous import", description = "Queue an Excel file for background import and return the job id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import job accepted"),
+            @ApiResponse(responseCode = "400", description = "Bad request - invalid file format or empty file"),
+            @ApiResponse(responseCode = "503", description = "Too many imports in progress")
+    })
+    public ResponseEntity<?> startImportJob(
+            @Parameter(description = "Excel file to import", required = true) @RequestParam("file") MultipartFile file) {
+        try {
+            if (file.isEmpty()) {
+                return ResponseEntity.badRequest().body("Please select a file to upload");
+            }
+            if (!file.getOriginalFilename().endsWith(".xlsx") && !file.getOriginalFilename().endsWith(".xls")) {
+                return ResponseEntity.badRequest().body("Only Excel files (.xlsx, .xls) are supported");
+            }
+
+            DepartmentImportJob job = departmentImportJobService.submit(file);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, "/api/departments/import/jobs/" + job.getId())
+                    .body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many imports in progress, please retry later");
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Failed to import: " + e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<String> busyResponse(DepartmentBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().getSeconds())))
+                .body(e.getMessage());
+    }
+
+    static void busy(HttpServletResponse response, DepartmentBusyException e) throws IOException {
+        if (!response.isCommitted()) {
+            response.reset();
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().getSeconds())));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), e.getMessage());
+        }
+    }
+
+    @GetMapping("/import/jobs/{jobId}")
+    @Operation(summary = "Get import job status", description = "Rows processed, throughput, row errors and completion of an import job")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Job status"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    public ResponseEntity<DepartmentImportJob> getImportJob(
+            @Parameter(description = "Import job ID", required = true) @PathVariable String jobId) {
+        return departmentImportJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/cache/stats")
+    @Operation(summary = "Department cache statistics", description = "Hit, miss and eviction counts of the department lookup caches")
+    public ResponseEntity<Map<String, Object>> getCacheStatistics() {
+        return ResponseEntity.ok(departmentService.getCacheStatistics());
+    }
+
     @PostMapping("/delete-all")
     @Transactional
     @Operation(summary = "Delete multiple departments", description = "Delete multiple departments by IDs")
@@ -236,8 +683,9 @@ public class DepartmentAPIController {
             if (ids == null || ids.isEmpty()) {
                 return ResponseEntity.badRequest().body("No departments selected for deletion");
             }
-            for (Long id : ids) {
-                departmentService.deleteDepartment(id);
+            DepartmentBulkDeleteResult result = departmentService.deleteDepartments(ids);
+            if (!result.getMissingIds().isEmpty()) {
+                return ResponseEntity.ok(result.getDeletedCount() + " departments deleted, not found: " + result.getMissingIds());
             }
             return ResponseEntity.ok("Departments deleted successfully");
         } catch (Exception e) {
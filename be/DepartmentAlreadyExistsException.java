@@ -1,6 +1,6 @@
 package com.example.hcm25_cpl_ks_java_01_lms.department;
 
-public class DepartmentAlreadyExistsException extends Throwable {
+public class DepartmentAlreadyExistsException extends RuntimeException {
     public DepartmentAlreadyExistsException(String message) {
         super(message);
     }
@@ -0,0 +1,16 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk delete: how many departments were removed and which ids did not exist.
+ */
+@AllArgsConstructor
+@Getter
+public class DepartmentBulkDeleteResult {
+    private final int deletedCount;
+    private final List<Long> missingIds;
+}
@@ -0,0 +1,446 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Bulk loader for large CSV / NDJSON department feeds (e.g. the nightly HR sync).
+ * Rows are parsed incrementally and written to staging tables with JDBC batches. Missing locations
+ * are created through {@link DepartmentLocationRegistry}; the rows are then merged into
+ * {@code department}, {@code department_users} and {@code department_courses} with a handful of
+ * set-based statements. Membership rows are only added, never removed.
+ * <p>
+ * The staging tables are ordinary tables keyed by a batch id rather than vendor temp tables
+ * or {@code COPY}, so the same SQL runs on every database the application supports.
+ */
+@Component
+public class DepartmentBulkLoader {
+    private static final String STAGE_TABLE = "department_import_stage";
+    private static final String MEMBER_STAGE_TABLE = "department_import_stage_member";
+    private static final String USER = "U";
+    private static final String COURSE = "C";
+    private static final int MAX_UNKNOWN_REFERENCES = 1000;
+    private static final int MAX_INSERT_ATTEMPTS = 3;
+    // Độ dài cột varchar(255) của bảng staging
+    private static final int MAX_VALUE_LENGTH = 255;
+
+    private static final String INSERT_STAGE_SQL =
+            "insert into " + STAGE_TABLE + " (batch_id, row_num, name, normalized_name, location_name) values (?, ?, ?, ?, ?)";
+    private static final String INSERT_MEMBER_STAGE_SQL =
+            "insert into " + MEMBER_STAGE_TABLE + " (batch_id, row_num, member_type, department_name, member_name) values (?, ?, ?, ?, ?)";
+
+    // Trùng tên (sau khi chuẩn hóa) trong cùng file thì dòng sau ghi đè dòng trước (giống import Excel)
+    private static final String LATEST_ROW =
+            "s.row_num = (select max(s2.row_num) from " + STAGE_TABLE + " s2 " +
+            "where s2.batch_id = s.batch_id and s2.normalized_name = s.normalized_name)";
+    private static final String STAGED_LOCATION_ID = "(select min(l.id) from location l where l.name = s.location_name)";
+    // Chỉ cập nhật (và tăng version, tức đổi ETag) các department có location thực sự thay đổi
+    private static final String MERGE_UPDATES_SQL =
+            "update department set location_id = (select " + STAGED_LOCATION_ID + " " +
+            "from " + STAGE_TABLE + " s where s.batch_id = ? and s.normalized_name = department.normalized_name and " + LATEST_ROW + "), " +
+            "version = version + 1 " +
+            "where exists (select 1 from " + STAGE_TABLE + " s where s.batch_id = ? and s.normalized_name = department.normalized_name " +
+            "and " + LATEST_ROW + " and coalesce(" + STAGED_LOCATION_ID + ", -1) <> coalesce(department.location_id, -1))";
+    private static final String MERGE_INSERTS_SQL =
+            "insert into department (name, normalized_name, location_id, user_count, course_count, version) " +
+            "select s.name, s.normalized_name, " + STAGED_LOCATION_ID + ", 0, 0, 0 " +
+            "from " + STAGE_TABLE + " s where s.batch_id = ? and " + LATEST_ROW + " " +
+            "and not exists (select 1 from department d where d.normalized_name = s.normalized_name)";
+    private static final String MERGE_USERS_SQL =
+            "insert into department_users (department_id, user_id) select distinct d.id, m.member_id " +
+            "from " + MEMBER_STAGE_TABLE + " m join department d on d.normalized_name = m.department_name " +
+            "where m.batch_id = ? and m.member_type = 'U' and m.member_id is not null " +
+            "and not exists (select 1 from department_users du where du.department_id = d.id and du.user_id = m.member_id)";
+    private static final String MERGE_COURSES_SQL =
+            "insert into department_courses (department_id, course_id) select distinct d.id, m.member_id " +
+            "from " + MEMBER_STAGE_TABLE + " m join department d on d.normalized_name = m.department_name " +
+            "where m.batch_id = ? and m.member_type = 'C' and m.member_id is not null " +
+            "and not exists (select 1 from department_courses dc where dc.department_id = d.id and dc.course_id = m.member_id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DepartmentMembershipResolver membershipResolver;
+    private final DepartmentLocationRegistry locationRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DepartmentMetrics departmentMetrics;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate savepoint;
+    private final int batchSize;
+
+    public DepartmentBulkLoader(JdbcTemplate jdbcTemplate, DepartmentMembershipResolver membershipResolver,
+                                DepartmentLocationRegistry locationRegistry,
+                                ApplicationEventPublisher eventPublisher, DepartmentMetrics departmentMetrics,
+                                ObjectMapper objectMapper, PlatformTransactionManager transactionManager,
+                                @Value("${department.import.batch-size:500}") int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Import batch size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.membershipResolver = membershipResolver;
+        this.locationRegistry = locationRegistry;
+        this.eventPublisher = eventPublisher;
+        this.departmentMetrics = departmentMetrics;
+        this.objectMapper = objectMapper;
+        this.savepoint = new TransactionTemplate(transactionManager);
+        this.savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    void createStagingTables() {
+        jdbcTemplate.execute("create table if not exists " + STAGE_TABLE + " (" +
+                "batch_id varchar(36) not null, row_num integer not null, " +
+                "name varchar(255) not null, normalized_name varchar(255), location_name varchar(255))");
+        jdbcTemplate.execute("create table if not exists " + MEMBER_STAGE_TABLE + " (" +
+                "batch_id varchar(36) not null, row_num integer not null, member_type char(1) not null, " +
+                "department_name varchar(255) not null, member_name varchar(255) not null, member_id bigint)");
+        // "if not exists" cho cột/index không có trên mọi database, đã tồn tại thì bỏ qua lỗi
+        executeIfMissing("alter table " + STAGE_TABLE + " add normalized_name varchar(255)");
+        executeIfMissing("create index " + STAGE_TABLE + "_name_idx on " + STAGE_TABLE + " (batch_id, name)");
+        executeIfMissing("create index " + STAGE_TABLE + "_normalized_name_idx on " + STAGE_TABLE + " (batch_id, normalized_name)");
+        executeIfMissing("create index " + MEMBER_STAGE_TABLE + "_name_idx on " + MEMBER_STAGE_TABLE + " (batch_id, member_type, member_name)");
+    }
+
+    private void executeIfMissing(String sql) {
+        try {
+            jdbcTemplate.execute(sql);
+        } catch (DataAccessException e) {
+            // Column or index already exists
+        }
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "bulk-import"})
+    @Transactional
+    public DepartmentImportResult load(DepartmentTextExporter.Format format, InputStream inputStream) throws IOException {
+        long start = System.currentTimeMillis();
+        DepartmentImportResult result = new DepartmentImportResult();
+        DepartmentImportResult finished = null;
+        departmentMetrics.importStarted();
+        try {
+            StagingWriter staging = new StagingWriter(UUID.randomUUID().toString(), result);
+            if (format == DepartmentTextExporter.Format.CSV) {
+                readCsv(inputStream, staging);
+            } else {
+                readNdjson(inputStream, staging);
+            }
+            staging.flush();
+            if (result.getRowsProcessed() == 0) {
+                throw new IllegalArgumentException("Departments list cannot be null or empty");
+            }
+
+            merge(staging.batchId, result);
+            jdbcTemplate.update("delete from " + MEMBER_STAGE_TABLE + " where batch_id = ?", staging.batchId);
+            jdbcTemplate.update("delete from " + STAGE_TABLE + " where batch_id = ?", staging.batchId);
+            eventPublisher.publishEvent(DepartmentChangedEvent.bulk(DepartmentChangedEvent.Type.IMPORTED));
+
+            result.setElapsedMillis(System.currentTimeMillis() - start);
+            finished = result;
+            return result;
+        } finally {
+            departmentMetrics.importFinished(finished);
+        }
+    }
+
+    private void merge(String batchId, DepartmentImportResult result) {
+        Integer distinctNames = jdbcTemplate.queryForObject(
+                "select count(distinct normalized_name) from " + STAGE_TABLE + " where batch_id = ?", Integer.class, batchId);
+        result.addDuplicates(result.getRowsProcessed() - (distinctNames != null ? distinctNames : 0));
+
+        // Location mới được tạo qua registry để registry biết id của chúng sau khi commit
+        locationRegistry.resolveOrCreate(jdbcTemplate.queryForList("select distinct location_name from " + STAGE_TABLE +
+                " where batch_id = ? and location_name is not null", String.class, batchId), result::addLocationsCreated);
+        // Cập nhật trước khi insert để các dòng vừa insert không bị đếm là updated
+        result.addUpdated(jdbcTemplate.update(MERGE_UPDATES_SQL, batchId, batchId));
+        mergeInserts(batchId, result);
+
+        resolveMembers(batchId, USER, membershipResolver::resolveUserIds);
+        resolveMembers(batchId, COURSE, membershipResolver::resolveCourseIds);
+        result.addMemberships(jdbcTemplate.update(MERGE_USERS_SQL, batchId));
+        result.addMemberships(jdbcTemplate.update(MERGE_COURSES_SQL, batchId));
+        if (result.getMembershipsAdded() > 0) {
+            jdbcTemplate.update(DepartmentCounterReconciler.RECOUNT_SQL + "where exists (select 1 from " + MEMBER_STAGE_TABLE +
+                    " m where m.batch_id = ? and m.department_name = department.normalized_name)", batchId);
+        }
+        reportUnknownMembers(batchId, result);
+    }
+
+    /**
+     * Runs {@link #MERGE_INSERTS_SQL} in a savepoint. If another transaction creates one of the
+     * staged names between the "not exists" check and the insert, the unique index rejects the
+     * whole statement; only the savepoint is rolled back, those names are merged as updates and the
+     * insert is retried.
+     */
+    private void mergeInserts(String batchId, DepartmentImportResult result) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Integer inserted = savepoint.execute(status -> jdbcTemplate.update(MERGE_INSERTS_SQL, batchId));
+                result.addInserted(inserted != null ? inserted : 0);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                if (attempt >= MAX_INSERT_ATTEMPTS || !DepartmentService.isNameConflict(e)) {
+                    throw e;
+                }
+                // Transaction kia đã commit (unique index chờ nó trước khi báo lỗi) nên tên đó giờ đọc được
+                result.addUpdated(jdbcTemplate.update(MERGE_UPDATES_SQL, batchId, batchId));
+            }
+        }
+    }
+
+    private void resolveMembers(String batchId, String memberType,
+                                Function<List<String>, Map<String, Long>> resolver) {
+        List<String> names = jdbcTemplate.queryForList("select distinct member_name from " + MEMBER_STAGE_TABLE +
+                " where batch_id = ? and member_type = ?", String.class, batchId, memberType);
+        for (int from = 0; from < names.size(); from += batchSize) {
+            Map<String, Long> ids = resolver.apply(names.subList(from, Math.min(from + batchSize, names.size())));
+            List<Object[]> updates = new ArrayList<>(ids.size());
+            ids.forEach((name, id) -> updates.add(new Object[]{id, batchId, memberType, name}));
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate("update " + MEMBER_STAGE_TABLE + " set member_id = ? " +
+                        "where batch_id = ? and member_type = ? and member_name = ?", updates);
+            }
+        }
+    }
+
+    private void reportUnknownMembers(String batchId, DepartmentImportResult result) {
+        jdbcTemplate.query("select row_num, member_type, member_name from " + MEMBER_STAGE_TABLE +
+                " where batch_id = ? and member_id is null order by row_num", rs -> {
+            int reported = 0;
+            while (rs.next() && reported++ < MAX_UNKNOWN_REFERENCES) {
+                String kind = USER.equals(rs.getString(2)) ? "user" : "course";
+                result.addRowError(rs.getInt(1), "Unknown " + kind + " '" + rs.getString(3) + "'");
+            }
+            return null;
+        }, batchId);
+    }
+
+    private void readCsv(InputStream inputStream, StagingWriter staging) throws IOException {
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)));
+        List<String> header = reader.readRecord();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file is empty");
+        }
+        int nameColumn = -1, locationColumn = -1, usersColumn = -1, coursesColumn = -1;
+        for (int i = 0; i < header.size(); i++) {
+            // Chấp nhận cả header của file CSV export (Name, Location, User Names, Course Names)
+            switch (header.get(i).replace("\uFEFF", "").replace(" ", "").toLowerCase(Locale.ROOT)) {
+                case "name":
+                    nameColumn = i;
+                    break;
+                case "location":
+                    locationColumn = i;
+                    break;
+                case "users":
+                case "usernames":
+                    usersColumn = i;
+                    break;
+                case "courses":
+                case "coursenames":
+                    coursesColumn = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (nameColumn < 0) {
+            throw new IllegalArgumentException("CSV header must contain a 'name' column");
+        }
+
+        int rowNum = 1;
+        List<String> record;
+        while ((record = reader.readRecord()) != null) {
+            rowNum++;
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            staging.stage(rowNum, field(record, nameColumn), field(record, locationColumn),
+                    DepartmentExcelImporter.splitNames(field(record, usersColumn)),
+                    DepartmentExcelImporter.splitNames(field(record, coursesColumn)));
+        }
+    }
+
+    private void readNdjson(InputStream inputStream, StagingWriter staging) throws IOException {
+        try (MappingIterator<JsonNode> rows = objectMapper.readerFor(JsonNode.class).readValues(inputStream)) {
+            int rowNum = 0;
+            while (rows.hasNextValue()) {
+                rowNum++;
+                JsonNode row = rows.nextValue();
+                if (!row.isObject()) {
+                    staging.result.addRowError(rowNum, "Expected a JSON object");
+                    continue;
+                }
+                staging.stage(rowNum, text(row.get("name")), text(row.get("location")),
+                        members(row.has("users") ? row.get("users") : row.get("userNames")),
+                        members(row.has("courses") ? row.get("courses") : row.get("courseNames")));
+            }
+        }
+    }
+
+    private static String field(List<String> record, int column) {
+        return column >= 0 && column < record.size() ? record.get(column) : null;
+    }
+
+    private static String text(JsonNode node) {
+        return node != null && !node.isNull() ? node.asText() : null;
+    }
+
+    private static List<String> members(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return List.of();
+        }
+        if (!node.isArray()) {
+            return DepartmentExcelImporter.splitNames(node.asText());
+        }
+        List<String> names = new ArrayList<>(node.size());
+        node.forEach(element -> {
+            String name = element.asText().trim();
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+
+    private final class StagingWriter {
+        private final String batchId;
+        private final DepartmentImportResult result;
+        private final List<Object[]> rows = new ArrayList<>();
+        private final List<Object[]> members = new ArrayList<>();
+
+        private StagingWriter(String batchId, DepartmentImportResult result) {
+            this.batchId = batchId;
+            this.result = result;
+        }
+
+        void stage(int rowNum, String name, String locationName, List<String> users, List<String> courses) {
+            if (name == null || name.trim().isEmpty()) {
+                result.addRowError(rowNum, "Department name cannot be empty");
+                return;
+            }
+            name = name.trim();
+            String location = locationName == null || locationName.trim().isEmpty() ? null : locationName.trim();
+            // Dòng thành viên gắn với department qua tên đã chuẩn hóa
+            String normalizedName = Department.normalizeName(name);
+            // Một giá trị quá dài sẽ làm hỏng cả lô batch insert nên bị loại ngay tại dòng đó
+            if (name.length() > MAX_VALUE_LENGTH || normalizedName.length() > MAX_VALUE_LENGTH) {
+                result.addRowError(rowNum, "Department name exceeds " + MAX_VALUE_LENGTH + " characters");
+                return;
+            }
+            if (location != null && location.length() > MAX_VALUE_LENGTH) {
+                result.addRowError(rowNum, "Location name exceeds " + MAX_VALUE_LENGTH + " characters");
+                return;
+            }
+            if (tooLong(users) || tooLong(courses)) {
+                result.addRowError(rowNum, "User or course name exceeds " + MAX_VALUE_LENGTH + " characters");
+                return;
+            }
+            rows.add(new Object[]{batchId, rowNum, name, normalizedName, location});
+            for (String user : users) {
+                members.add(new Object[]{batchId, rowNum, USER, normalizedName, user});
+            }
+            for (String course : courses) {
+                members.add(new Object[]{batchId, rowNum, COURSE, normalizedName, course});
+            }
+            result.addRows(1);
+            if (rows.size() >= batchSize || members.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        private boolean tooLong(List<String> names) {
+            for (String memberName : names) {
+                if (memberName.length() > MAX_VALUE_LENGTH) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void flush() {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_STAGE_SQL, rows);
+                rows.clear();
+            }
+            if (!members.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_MEMBER_STAGE_SQL, members);
+                members.clear();
+            }
+        }
+    }
+
+    /**
+     * Minimal RFC 4180 reader: quoted fields may contain commas, doubled quotes and line breaks.
+     */
+    private static final class CsvReader {
+        private final Reader reader;
+
+        private CsvReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        List<String> readRecord() throws IOException {
+            int c = reader.read();
+            if (c < 0) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c < 0) {
+                        throw new IllegalArgumentException("Unterminated quoted field in CSV");
+                    }
+                    if (c == '"') {
+                        int next = reader.read();
+                        if (next == '"') {
+                            field.append('"');
+                            c = reader.read();
+                        } else {
+                            quoted = false;
+                            c = next;
+                        }
+                        continue;
+                    }
+                    field.append((char) c);
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n' || c < 0) {
+                    break;
+                } else if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
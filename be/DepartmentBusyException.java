@@ -0,0 +1,20 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import java.time.Duration;
+
+/**
+ * Thrown when an export or import cannot get a {@link DepartmentWorkLimiter} permit in time.
+ * Controllers answer it with 503 and a {@code Retry-After} header.
+ */
+public class DepartmentBusyException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public DepartmentBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through cache for department lookups.
+ * Name lookups are cached here, keyed by {@link Department#normalizeName normalized name}
+ * like the unique index, in a bounded Caffeine cache (W-TinyLFU eviction, expire-after-write).
+ * Only names that exist are cached. Lookups by id go through the
+ * Hibernate second-level cache region {@value DepartmentCacheConfig#REGION}.
+ * Both are invalidated from {@link DepartmentChangedEvent}s after commit.
+ */
+@Component
+public class DepartmentCache {
+    private final Cache<String, Long> idsByName;
+    private final EntityManagerFactory entityManagerFactory;
+    // Tăng mỗi lần invalidate, để một lần đọc bắt đầu trước đó không ghi lại giá trị cũ
+    private final AtomicLong generation = new AtomicLong();
+
+    public DepartmentCache(EntityManagerFactory entityManagerFactory,
+                           @Value("${department.cache.maximum-size:10000}") long maximumSize,
+                           @Value("${department.cache.ttl:PT10M}") Duration ttl) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.idsByName = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the id of the department whose normalized name matches {@code name}, calling
+     * {@code loader} with the normalized name on a miss. Misses are not cached, since a
+     * department with that name may be committed at any moment.
+     */
+    public Optional<Long> findIdByName(String name, Function<String, Optional<Long>> loader) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        String key = Department.normalizeName(name);
+        Long cached = idsByName.getIfPresent(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long loadedAt = generation.get();
+        Optional<Long> id = loader.apply(key);
+        if (id.isPresent()) {
+            idsByName.put(key, id.get());
+            if (generation.get() != loadedAt) {
+                // Có thay đổi được commit trong lúc đọc, giá trị vừa đọc có thể đã cũ
+                idsByName.invalidate(key);
+            }
+        }
+        return id;
+    }
+
+    public void evictName(String name) {
+        if (name != null) {
+            generation.incrementAndGet();
+            idsByName.invalidate(Department.normalizeName(name));
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDepartmentChanged(DepartmentChangedEvent event) {
+        generation.incrementAndGet();
+        if (event.isWholeTable()) {
+            idsByName.invalidateAll();
+            entityManagerFactory.getCache().evict(Department.class);
+            return;
+        }
+        for (String name : event.getNames()) {
+            if (name != null) {
+                idsByName.invalidate(Department.normalizeName(name));
+            }
+        }
+        if (!event.getIds().isEmpty()) {
+            // Tên cũ của department vừa đổi tên không có trong event, nên xóa theo id
+            idsByName.asMap().values().removeIf(id -> event.getIds().contains(id));
+        }
+        // Các thay đổi ghi bằng JDBC (import) không đi qua Hibernate nên phải tự evict cache cấp 2
+        for (Long id : event.getIds()) {
+            entityManagerFactory.getCache().evict(Department.class, id);
+        }
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        CacheStats byName = idsByName.stats();
+        stats.put("byName.size", idsByName.estimatedSize());
+        stats.put("byName.hits", byName.hitCount());
+        stats.put("byName.misses", byName.missCount());
+        stats.put("byName.evictions", byName.evictionCount());
+        stats.put("byName.hitRate", byName.hitRate());
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        // Thống kê Hibernate chỉ có khi ứng dụng bật hibernate.generate_statistics
+        stats.put("byId.statisticsEnabled", statistics.isStatisticsEnabled());
+        CacheRegionStatistics byId = statistics.isStatisticsEnabled()
+                ? statistics.getDomainDataRegionStatistics(DepartmentCacheConfig.REGION) : null;
+        if (byId != null) {
+            stats.put("byId.size", byId.getElementCountInMemory());
+            stats.put("byId.hits", byId.getHitCount());
+            stats.put("byId.misses", byId.getMissCount());
+            stats.put("byId.puts", byId.getPutCount());
+        }
+        return stats;
+    }
+}
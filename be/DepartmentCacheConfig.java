@@ -0,0 +1,50 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Backs the Hibernate second-level cache region of {@link Department} with a bounded,
+ * expiring Caffeine (JCache) cache. Turning the second-level cache on
+ * ({@code spring.jpa.properties.hibernate.cache.use_second_level_cache}), Hibernate statistics
+ * ({@code spring.jpa.properties.hibernate.generate_statistics}) and {@code @EnableScheduling} for
+ * the refresh jobs is left to the application's own configuration.
+ */
+@Configuration
+public class DepartmentCacheConfig {
+    public static final String REGION = "department";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager departmentCacheManager(@Value("${department.cache.maximum-size:10000}") long maximumSize,
+                                               @Value("${department.cache.ttl:PT10M}") Duration ttl) {
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName()).getCacheManager();
+        if (cacheManager.getCache(REGION) == null) {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maximumSize));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            configuration.setStatisticsEnabled(true);
+            cacheManager.createCache(REGION, configuration);
+        }
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer departmentSecondLevelCache(CacheManager departmentCacheManager) {
+        return properties -> {
+            // Không ghi đè region factory/cache manager nếu ứng dụng đã cấu hình
+            properties.putIfAbsent(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.putIfAbsent(ConfigSettings.CACHE_MANAGER, departmentCacheManager);
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Published by every write path of the department module. Listeners (caches, search index,
+ * versions) react to it after the surrounding transaction commits.
+ * {@code names} holds every department name that may have changed meaning, old and new.
+ * Set-based bulk loads do not know which rows they touched and publish {@link #bulk(Type)},
+ * which tells listeners to drop or rebuild everything.
+ */
+@Getter
+public class DepartmentChangedEvent {
+    public enum Type {CREATED, UPDATED, DELETED, IMPORTED}
+
+    private final Type type;
+    private final Set<Long> ids;
+    private final Set<String> names;
+    private final boolean wholeTable;
+
+    public DepartmentChangedEvent(Type type, Collection<Long> ids, Collection<String> names) {
+        this(type, ids, names, false);
+    }
+
+    private DepartmentChangedEvent(Type type, Collection<Long> ids, Collection<String> names, boolean wholeTable) {
+        this.type = type;
+        this.wholeTable = wholeTable;
+        this.ids = ids != null ? Collections.unmodifiableSet(new LinkedHashSet<>(ids)) : Set.of();
+        Set<String> nameSet = new LinkedHashSet<>();
+        if (names != null) {
+            names.stream().filter(Objects::nonNull).forEach(nameSet::add);
+        }
+        this.names = Collections.unmodifiableSet(nameSet);
+    }
+
+    public static DepartmentChangedEvent of(Type type, Long id, String... names) {
+        return new DepartmentChangedEvent(type, id != null ? Set.of(id) : Set.of(), Arrays.asList(names));
+    }
+
+    public static DepartmentChangedEvent bulk(Type type) {
+        return new DepartmentChangedEvent(type, Set.of(), Set.of(), true);
+    }
+}
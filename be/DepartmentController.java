@@ -10,9 +10,8 @@ import com.google.api.ResourceDescriptor;
 import com.google.protobuf.DescriptorProtos;
 import com.google.protobuf.GeneratedMessage;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -24,7 +23,8 @@ import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -36,28 +36,42 @@ import static com.google.api.ResourceProto.resource;
 @RequestMapping("/departments")
 @PreAuthorize("@customSecurityService.hasRoleForModule(authentication, 'Department')")
 public class DepartmentController {
+    private static final int PRINT_BUFFER_SIZE = 4 * 1024;
 
     private final DepartmentService departmentService;
     private final LocationService locationService;
     private final UserService userService;
     private final CourseService courseService;
+    private final DepartmentWorkLimiter departmentWorkLimiter;
 
     public DepartmentController(DepartmentService departmentService, LocationService locationService,
-                                UserService userService, CourseService courseService) {
+                                UserService userService, CourseService courseService,
+                                DepartmentWorkLimiter departmentWorkLimiter) {
         this.departmentService = departmentService;
         this.locationService = locationService;
         this.userService = userService;
         this.courseService = courseService;
+        this.departmentWorkLimiter = departmentWorkLimiter;
     }
 
     @GetMapping
     public String listDepartments(Model model,
                                   @RequestParam(defaultValue = "0") int page,
                                   @RequestParam(defaultValue = "10") int size,
-                                  @RequestParam(required = false) String searchTerm) {
+                                  @RequestParam(required = false) String searchTerm,
+                                  @RequestParam(required = false) Long afterId,
+                                  @RequestParam(required = false) Long beforeId) {
         try {
-            Page<Department> departments = departmentService.getDepartments(searchTerm, page, size);
+            Slice<DepartmentSummary> departments = departmentService.getDepartmentSlice(searchTerm, afterId, beforeId, page, size);
+            boolean searching = searchTerm != null && !searchTerm.trim().isEmpty();
             model.addAttribute("departments", departments);
+            model.addAttribute("searchTerm", searchTerm);
+            // Trang kế tiếp được đọc bằng keyset (id > afterId) thay vì OFFSET
+            model.addAttribute("nextAfterId", !searching && departments.hasContent()
+                    ? departments.getContent().get(departments.getNumberOfElements() - 1).getId() : null);
+            model.addAttribute("prevBeforeId", !searching && departments.hasContent()
+                    ? departments.getContent().get(0).getId() : null);
+            model.addAttribute("totalCount", departmentService.getApproximateDepartmentCount());
             model.addAttribute("content", "departments/list");
             return Constants.LAYOUT;
         } catch (IllegalArgumentException e) {
@@ -77,14 +91,9 @@ public class DepartmentController {
     }
 
     @PostMapping
-    @Transactional
     public String createDepartment(@ModelAttribute Department department, Model model) {
         try {
-            // Check if department name already exists
-            if (departmentService.existsByName(department.getName())) {
-                throw new IllegalArgumentException("Department name '" + department.getName() + "' already exists");
-            }
-
+            // Trùng tên được phát hiện bởi unique index khi ghi (DepartmentAlreadyExistsException)
             departmentService.createDepartment(department);
             return "redirect:/departments";
         } catch (Exception e) {
@@ -94,13 +103,24 @@ public class DepartmentController {
         }
     }
 
+    @GetMapping("/detail/{id}")
+    public String showDetail(@PathVariable Long id, Model model) {
+        try {
+            model.addAttribute("department", departmentService.getDepartmentSummary(id));
+            model.addAttribute("content", "departments/detail");
+            return Constants.LAYOUT;
+        } catch (Exception e) {
+            model.addAttribute("error", e.getMessage());
+            return "redirect:/departments";
+        }
+    }
+
     @GetMapping("/edit/{id}")
     public String showEditForm(@PathVariable Long id, Model model) {
         try {
+            // Users/courses được trang update tải dần qua /api/departments/{id}/users và /courses
             Department department = departmentService.getDepartmentById(id);
             model.addAttribute("department", department);
-            model.addAttribute("courses", courseService.getAllCourses());
-            model.addAttribute("users", userService.getUsersOfDepartment());
             model.addAttribute("locations", locationService.getLocationOfDepartment());
             model.addAttribute("content", "departments/update");
             return Constants.LAYOUT;
@@ -111,16 +131,9 @@ public class DepartmentController {
     }
 
     @PostMapping("/edit/{id}")
-    @Transactional
     public String updateDepartment(@PathVariable Long id, @ModelAttribute Department departmentDetails, Model model) {
         try {
             departmentDetails.setId(id);
-            // Check if department name exists for a different department
-            Department existingDepartment = departmentService.getDepartmentByName(departmentDetails.getName());
-            if (existingDepartment != null && !existingDepartment.getId().equals(id)) {
-                throw new IllegalArgumentException("Department name '" + departmentDetails.getName() + "' is already in use by another department");
-            }
-
             departmentService.updateDepartment(departmentDetails);
             return "redirect:/departments";
         } catch (Exception e) {
@@ -143,33 +156,31 @@ public class DepartmentController {
     }
 
     @GetMapping("/export")
-    public ResponseEntity<Resource> exportToExcel(
+    public void exportToExcel(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(required = false) Integer size) {
-        try {
-            // Nếu size không được truyền vào, mặc định lấy toàn bộ dữ liệu
+            @RequestParam(required = false) Integer size,
+            HttpServletResponse response) throws IOException {
+        try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire()) {
+            response.setContentType("application/vnd.ms-excel");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=departments.xlsx");
+            // Nếu size không được truyền vào, xuất toàn bộ dữ liệu theo từng chunk
             if (size == null) {
-                size = (int) departmentService.countAllDepartments();
+                departmentService.exportAllDepartmentsToExcel(response.getOutputStream());
+                return;
             }
             List<Department> departments = departmentService.getAllDepartments("", page, size).getContent();
-            ByteArrayInputStream in = departmentService.exportDepartmentsToExcel(departments);
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=departments.xlsx");
-
-            return ResponseEntity
-                    .ok()
-                    .headers(headers)
-                    .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                    .body(new InputStreamResource(in));
-
+            departmentService.exportDepartmentsToExcel(departments, response.getOutputStream());
+        } catch (DepartmentBusyException e) {
+            DepartmentAPIController.busy(response, e);
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
         }
     }
 
     @PostMapping("/import")
-    @Transactional
     public String importExcel(@RequestParam("file") MultipartFile file, Model model) {
         try {
             if (file.isEmpty()) {
@@ -179,12 +190,19 @@ public class DepartmentController {
                 throw new IllegalArgumentException("Only Excel files (.xlsx, .xls) are supported");
             }
 
-            List<Department> departments = DepartmentExcelImporter.importDepartments(file.getInputStream());
-            departmentService.saveAllFromExcel(departments);
+            DepartmentImportResult result;
+            try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquire()) {
+                result = departmentService.importFromExcel(file.getInputStream());
+            }
+            if (!result.getRowErrors().isEmpty()) {
+                model.addAttribute("error", "Imported with " + result.getRowErrorCount() + " row errors: "
+                        + String.join("; ", result.getRowErrors().subList(0, Math.min(10, result.getRowErrors().size()))));
+                return listDepartments(model, 0, 10, null, null, null);
+            }
             return "redirect:/departments";
         } catch (Exception e) {
             model.addAttribute("error", "Failed to import: " + e.getMessage());
-            return listDepartments(model, 0, 10, null);
+            return listDepartments(model, 0, 10, null, null, null);
         }
     }
 
@@ -197,8 +215,12 @@ public class DepartmentController {
     }
 
     @GetMapping("/print")
-    public String printDepartment(Model model) {
-        model.addAttribute("departments", departmentService.getDepartments("", 0, Integer.MAX_VALUE));
+    public String printDepartment(Model model, HttpServletResponse response) {
+        // Thymeleaf ghi từng dòng ra response trong lúc duyệt cursor (produce-partial-output-while-processing),
+        // buffer nhỏ để trình duyệt nhận các dòng đầu ngay, mỗi lần đầy buffer được gửi thành một chunk
+        response.setBufferSize(PRINT_BUFFER_SIZE);
+        model.addAttribute("departments",
+                departmentService.iterateDepartmentSummaries(DepartmentService.DEFAULT_CHUNK_SIZE));
         return "departments/print";
     }
 
@@ -228,8 +250,9 @@ public class DepartmentController {
             if (ids == null || ids.isEmpty()) {
                 return ResponseEntity.badRequest().body("No departments selected for deletion");
             }
-            for (Long id : ids) {
-                departmentService.deleteDepartment(id);
+            DepartmentBulkDeleteResult result = departmentService.deleteDepartments(ids);
+            if (!result.getMissingIds().isEmpty()) {
+                return ResponseEntity.ok(result.getDeletedCount() + " departments deleted, not found: " + result.getMissingIds());
             }
             return ResponseEntity.ok("Departments deleted successfully");
         } catch (Exception e) {
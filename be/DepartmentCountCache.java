@@ -0,0 +1,44 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Approximate total number of departments for count-free listings.
+ * The value is recounted in the background when departments changed, never on the request path.
+ */
+@Component
+public class DepartmentCountCache {
+    private final DepartmentRepository departmentRepository;
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+    private volatile long count = -1;
+
+    public DepartmentCountCache(DepartmentRepository departmentRepository) {
+        this.departmentRepository = departmentRepository;
+    }
+
+    /**
+     * Last known total, or -1 before the first count completed.
+     */
+    public long getApproximateCount() {
+        return count;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDepartmentChanged(DepartmentChangedEvent event) {
+        stale.set(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${department.count.refresh-interval:PT30S}")
+    public void refresh() {
+        if (stale.getAndSet(false)) {
+            count = departmentRepository.count();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background check of the denormalized {@code user_count} / {@code course_count} columns.
+ * Departments are scanned in id ranges, each in its own short transaction; rows whose stored
+ * counts differ from the join tables are recounted and reported through {@link DepartmentChangedEvent}.
+ * The first run after startup also fills the columns for rows written before they existed.
+ */
+@Component
+public class DepartmentCounterReconciler {
+    /**
+     * Recounts both columns from the join tables and bumps the row version; callers append the {@code where} clause.
+     */
+    static final String RECOUNT_SQL = "update department set " +
+            "user_count = (select count(*) from department_users du where du.department_id = department.id), " +
+            "course_count = (select count(*) from department_courses dc where dc.department_id = department.id), " +
+            "version = version + 1 ";
+    private static final String DRIFT_SQL = "select d.id from department d where d.id > ? and d.id <= ? and (" +
+            "d.user_count <> (select count(*) from department_users du where du.department_id = d.id) or " +
+            "d.course_count <> (select count(*) from department_courses dc where dc.department_id = d.id))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DepartmentRepository departmentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter repaired;
+    private final int rangeSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public DepartmentCounterReconciler(JdbcTemplate jdbcTemplate, DepartmentRepository departmentRepository,
+                                       PlatformTransactionManager transactionManager,
+                                       ApplicationEventPublisher eventPublisher, MeterRegistry registry,
+                                       @Value("${department.counters.reconcile-range:1000}") int rangeSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.departmentRepository = departmentRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.repaired = Counter.builder("department.counters.repaired")
+                .description("Departments whose stored member counts had drifted and were recounted")
+                .register(registry);
+        this.rangeSize = rangeSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${department.counters.reconcile-interval:PT1H}")
+    public void reconcile() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Object[]> range = departmentRepository.findIdRange();
+            if (range.isEmpty() || range.get(0)[0] == null) {
+                return;
+            }
+            long min = ((Number) range.get(0)[0]).longValue();
+            long max = ((Number) range.get(0)[1]).longValue();
+            for (long afterId = min - 1; afterId < max; afterId += rangeSize) {
+                long from = afterId;
+                long to = Math.min(afterId + rangeSize, max);
+                transactionTemplate.executeWithoutResult(status -> repairRange(from, to));
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void repairRange(long afterId, long maxId) {
+        List<Long> drifted = jdbcTemplate.queryForList(DRIFT_SQL, Long.class, afterId, maxId);
+        if (drifted.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(drifted.size(), "?"));
+        jdbcTemplate.update(RECOUNT_SQL + "where id in (" + placeholders + ")", drifted.toArray());
+        repaired.increment(drifted.size());
+        eventPublisher.publishEvent(new DepartmentChangedEvent(DepartmentChangedEvent.Type.UPDATED, drifted, null));
+    }
+}
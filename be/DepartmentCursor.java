@@ -0,0 +1,78 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only keyset iterator over departments ordered by id.
+ * Rows are fetched with {@code id > lastId} in fixed-size chunks and the persistence
+ * context is cleared before each new chunk, so only one chunk of entities is managed at a time.
+ * Entities of a chunk become detached once the iterator moves past it.
+ */
+class DepartmentCursor implements Iterator<Department> {
+    private final DepartmentRepository departmentRepository;
+    private final EntityManager entityManager;
+    private final int chunkSize;
+    private final long maxId;
+
+    private Iterator<Department> current = Collections.emptyIterator();
+    private Long lastId;
+    private boolean exhausted;
+    private boolean started;
+
+    DepartmentCursor(DepartmentRepository departmentRepository, EntityManager entityManager, int chunkSize) {
+        this(departmentRepository, entityManager, chunkSize, 0L, Long.MAX_VALUE);
+    }
+
+    /**
+     * Cursor over the id range {@code (afterId, maxId]}.
+     */
+    DepartmentCursor(DepartmentRepository departmentRepository, EntityManager entityManager, int chunkSize,
+                     long afterId, long maxId) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.departmentRepository = departmentRepository;
+        this.entityManager = entityManager;
+        this.chunkSize = chunkSize;
+        this.lastId = afterId;
+        this.maxId = maxId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !exhausted) {
+            fetchNextChunk();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public Department next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    private void fetchNextChunk() {
+        if (started) {
+            entityManager.clear();
+        }
+        started = true;
+        List<Department> chunk = departmentRepository.findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(
+                lastId, maxId, PageRequest.of(0, chunkSize));
+        if (chunk.size() < chunkSize) {
+            exhausted = true;
+        }
+        if (!chunk.isEmpty()) {
+            lastId = chunk.get(chunk.size() - 1).getId();
+        }
+        current = chunk.iterator();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change stamp of the department data as a whole, bumped by every {@link DepartmentChangedEvent}
+ * (create, update, delete, import, membership change, counter repair) and by
+ * {@link #referenceChanged()}, i.e. when another module renames or deletes a location, user or
+ * course that department responses show by name. List and export ETags are derived from it,
+ * detail ETags from the row {@code version} plus a separate stamp that only reference changes move.
+ * <p>
+ * The stamp moves in the after-completion phase, i.e. after every after-commit listener
+ * (caches, name index) has caught up, and callers read it <em>before</em> reading the data;
+ * a response can therefore be newer than its ETag but never older. The stamp lives in memory
+ * like the other department caches and is prefixed with the start time, so ETags from before
+ * a restart never match.
+ */
+@Component
+public class DepartmentDataVersion {
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong stamp = new AtomicLong();
+    private final AtomicLong referenceStamp = new AtomicLong();
+
+    public long current() {
+        return stamp.get();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMPLETION, fallbackExecution = true)
+    public void onDepartmentChanged(DepartmentChangedEvent event) {
+        stamp.incrementAndGet();
+    }
+
+    /**
+     * Called by {@link DepartmentReferenceListener} after a location, user or course changed name
+     * or was deleted; the row {@code version} of the departments showing it does not move then.
+     */
+    public void referenceChanged() {
+        referenceStamp.incrementAndGet();
+        stamp.incrementAndGet();
+    }
+
+    /**
+     * Strong ETag for data read at {@code stamp}; {@code variant} tells apart representations
+     * served from the same URL (format, encoding).
+     */
+    public String etag(long stamp, String variant) {
+        return "\"" + epoch + "-" + stamp + (variant != null ? "-" + variant : "") + "\"";
+    }
+
+    public String rowETag(Long id, long version) {
+        return "\"" + epoch + "-" + referenceStamp.get() + "-" + id + "-" + version + "\"";
+    }
+}
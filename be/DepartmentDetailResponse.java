@@ -0,0 +1,23 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Single-department response of the REST API. Members are not embedded; they are
+ * served page by page from {@code /api/departments/{id}/users} and {@code /courses}.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class DepartmentDetailResponse {
+    private Long id;
+    private String name;
+    private Long locationId;
+    private String locationName;
+    private Long userCount;
+    private Long courseCount;
+}
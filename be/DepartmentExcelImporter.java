@@ -1,61 +1,151 @@
 package com.example.hcm25_cpl_ks_java_01_lms.department;
 
+import com.example.hcm25_cpl_ks_java_01_lms.course.Course;
 import com.example.hcm25_cpl_ks_java_01_lms.location.Location;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.example.hcm25_cpl_ks_java_01_lms.user.User;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
+/**
+ * Reads departments from the first sheet of an Excel file.
+ * Both formats are parsed with POI's event APIs (SAX for .xlsx, HSSF records for .xls),
+ * so rows are handed to the consumer one by one instead of loading the workbook DOM.
+ */
 public class DepartmentExcelImporter {
+    private static final int COLUMN_COUNT = 7;
+
     public static List<Department> importDepartments(InputStream inputStream) throws IOException {
+        List<Department> departments = new ArrayList<>();
+        importDepartments(inputStream, (department, rowNum) -> departments.add(department));
+        return departments;
+    }
+
+    /**
+     * Streams the parsed departments to {@code consumer} together with their 1-based row number.
+     * The first invalid row aborts the import.
+     */
+    public static void importDepartments(InputStream inputStream, ObjIntConsumer<Department> consumer) throws IOException {
+        importDepartments(inputStream, consumer, null);
+    }
+
+    /**
+     * Same as {@link #importDepartments(InputStream, ObjIntConsumer)}, but invalid rows are
+     * reported to {@code errorHandler} and skipped when a handler is given.
+     */
+    public static void importDepartments(InputStream inputStream, ObjIntConsumer<Department> consumer,
+                                         RowErrorHandler errorHandler) throws IOException {
         if (inputStream == null) {
             throw new IllegalArgumentException("Input stream cannot be null");
         }
 
-        List<Department> departments = new ArrayList<>();
-        try (Workbook workbook = new XSSFWorkbook(inputStream)) {
-            Sheet sheet = workbook.getSheetAt(0);
-            if (sheet == null) {
-                throw new IllegalArgumentException("Excel file contains no sheets");
-            }
-
-            Iterator<Row> rows = sheet.iterator();
-            if (!rows.hasNext()) {
-                throw new IllegalArgumentException("Excel file is empty");
-            }
+        InputStream in = FileMagic.prepareToCheckMagic(inputStream);
+        RowCollector collector = new RowCollector(consumer, errorHandler);
+        FileMagic magic = FileMagic.valueOf(in);
+        if (magic == FileMagic.OOXML) {
+            readXlsx(in, collector);
+        } else if (magic == FileMagic.OLE2) {
+            readXls(in, collector);
+        } else {
+            throw new IllegalArgumentException("Only Excel files (.xlsx, .xls) are supported");
+        }
 
-            rows.next(); // Skip header row
-            int rowNum = 1;
+        if (!collector.headerSeen) {
+            throw new IllegalArgumentException("Excel file is empty");
+        }
+    }
 
-            while (rows.hasNext()) {
-                Row row = rows.next();
-                rowNum++;
-                try {
-                    Department department = parseRow(row, rowNum);
-                    if (department != null) {
-                        departments.add(department);
-                    }
-                } catch (Exception e) {
-                    throw new IllegalArgumentException("Error parsing row " + rowNum + ": " + e.getMessage());
+    private static void readXlsx(InputStream in, RowCollector collector) throws IOException {
+        // OPCPackage mở từ file tạm để không phải giữ toàn bộ file zip trong bộ nhớ
+        Path tempFile = Files.createTempFile("department-import", ".xlsx");
+        try {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            try (OPCPackage pkg = OPCPackage.open(tempFile.toFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+                Iterator<InputStream> sheets = reader.getSheetsData();
+                if (!sheets.hasNext()) {
+                    throw new IllegalArgumentException("Excel file contains no sheets");
+                }
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(
+                            reader.getStylesTable(), null, strings, new XlsxRowHandler(collector), new DataFormatter(), false));
+                    parser.parse(new InputSource(sheet));
                 }
+            } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+                throw new IOException("Cannot read Excel file: " + e.getMessage(), e);
             }
+        } finally {
+            Files.deleteIfExists(tempFile);
         }
-        return departments;
     }
 
-    private static Department parseRow(Row row, int rowNum) {
+    private static void readXls(InputStream in, RowCollector collector) throws IOException {
+        // POIFSFileSystem(InputStream) đọc cả file vào bộ nhớ, mở từ file tạm thì chỉ đọc từng block
+        Path tempFile = Files.createTempFile("department-import", ".xls");
+        try {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            try (POIFSFileSystem fs = new POIFSFileSystem(tempFile.toFile(), true)) {
+                HSSFRequest request = new HSSFRequest();
+                XlsRowListener listener = new XlsRowListener(collector);
+                request.addListenerForAllRecords(listener.formatListener);
+                new HSSFEventFactory().processWorkbookEvents(request, fs);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @FunctionalInterface
+    public interface RowErrorHandler {
+        void onError(int rowNum, String message);
+    }
+
+    private static Department parseRow(String[] cells, int rowNum) {
         // Validate Department Name (Column 1)
-        if (row.getCell(1) == null || row.getCell(1).getStringCellValue().trim().isEmpty()) {
+        if (cells[1] == null || cells[1].trim().isEmpty()) {
             throw new IllegalArgumentException("Department name is missing at row " + rowNum);
         }
 
-        String name = row.getCell(1).getStringCellValue().trim();
+        String name = cells[1].trim();
         if (name.length() > 255) {
             throw new IllegalArgumentException("Department name exceeds 255 characters at row " + rowNum);
         }
@@ -64,8 +154,8 @@ public class DepartmentExcelImporter {
         department.setName(name);
 
         // Parse Location từ cột 2
-        if (row.getCell(2) != null && !row.getCell(2).getStringCellValue().trim().isEmpty()) {
-            String locationName = row.getCell(2).getStringCellValue().trim();
+        if (cells[2] != null && !cells[2].trim().isEmpty()) {
+            String locationName = cells[2].trim();
             if (!locationName.equals("N/A")) {
                 Location location = new Location();
                 location.setName(locationName);
@@ -75,9 +165,194 @@ public class DepartmentExcelImporter {
             }
         }
 
-        // Có thể thêm logic để parse Course Names từ cột 5 nếu cần
-        // Hiện tại bỏ qua vì cần CourseService để tìm kiếm và gắn Course
+        // User Names (cột 5) và Course Names (cột 6) chỉ mang tên; id được engine tra cứu theo lô
+        List<User> users = new ArrayList<>();
+        for (String username : splitNames(cells[5])) {
+            User user = new User();
+            user.setUsername(username);
+            users.add(user);
+        }
+        department.setUsers(users);
+
+        List<Course> courses = new ArrayList<>();
+        for (String courseName : splitNames(cells[6])) {
+            Course course = new Course();
+            course.setName(courseName);
+            courses.add(course);
+        }
+        department.setCourses(courses);
 
         return department;
     }
-}
\ No newline at end of file
+
+    /**
+     * Splits a member list cell as written by the export: names separated by ",",
+     * or by ";" when the cell contains one (for names that themselves contain commas).
+     */
+    static List<String> splitNames(String cell) {
+        if (cell == null || cell.trim().isEmpty() || cell.trim().equals("N/A")) {
+            return List.of();
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : cell.split(cell.indexOf(';') >= 0 ? ";" : ",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Collects the cell values of the current row and emits a department when the row ends.
+     * The first row of the sheet is treated as the header.
+     */
+    private static final class RowCollector {
+        private final ObjIntConsumer<Department> consumer;
+        private final RowErrorHandler errorHandler;
+        private final String[] cells = new String[COLUMN_COUNT];
+        private boolean headerSeen;
+
+        private RowCollector(ObjIntConsumer<Department> consumer, RowErrorHandler errorHandler) {
+            this.consumer = consumer;
+            this.errorHandler = errorHandler;
+        }
+
+        void startRow() {
+            Arrays.fill(cells, null);
+        }
+
+        void cell(int col, String value) {
+            if (col >= 0 && col < COLUMN_COUNT) {
+                cells[col] = value;
+            }
+        }
+
+        void endRow(int rowNum) {
+            if (!headerSeen) {
+                headerSeen = true; // Skip header row
+                return;
+            }
+            Department department;
+            try {
+                department = parseRow(cells, rowNum);
+            } catch (Exception e) {
+                if (errorHandler == null) {
+                    throw new IllegalArgumentException("Error parsing row " + rowNum + ": " + e.getMessage());
+                }
+                errorHandler.onError(rowNum, e.getMessage());
+                return;
+            }
+            if (department != null) {
+                consumer.accept(department, rowNum);
+            }
+        }
+    }
+
+    private static final class XlsxRowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowCollector collector;
+        private int nextColumn;
+
+        private XlsxRowHandler(RowCollector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            nextColumn = 0;
+            collector.startRow();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            collector.endRow(rowNum + 1);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int col = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = col + 1;
+            collector.cell(col, formattedValue);
+        }
+    }
+
+    private static final class XlsRowListener implements HSSFListener {
+        private final RowCollector collector;
+        private final FormatTrackingHSSFListener formatListener;
+        private SSTRecord sharedStrings;
+        private int sheetIndex = -1;
+        private int currentRow = -1;
+        // Công thức có kết quả chuỗi: giá trị nằm ở StringRecord ngay sau FormulaRecord
+        private FormulaRecord pendingStringFormula;
+
+        private XlsRowListener(RowCollector collector) {
+            this.collector = collector;
+            this.formatListener = new FormatTrackingHSSFListener(this);
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        sheetIndex++;
+                    }
+                    break;
+                case EOFRecord.sid:
+                    if (sheetIndex == 0) {
+                        finishRow();
+                    }
+                    break;
+                case SSTRecord.sid:
+                    sharedStrings = (SSTRecord) record;
+                    break;
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord label = (LabelSSTRecord) record;
+                    cell(label.getRow(), label.getColumn(), sharedStrings.getString(label.getSSTIndex()).getString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord plainLabel = (LabelRecord) record;
+                    cell(plainLabel.getRow(), plainLabel.getColumn(), plainLabel.getValue());
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord number = (NumberRecord) record;
+                    cell(number.getRow(), number.getColumn(), formatListener.formatNumberDateCell(number));
+                    break;
+                case FormulaRecord.sid:
+                    FormulaRecord formula = (FormulaRecord) record;
+                    if (formula.hasCachedResultString()) {
+                        pendingStringFormula = formula;
+                    } else {
+                        cell(formula.getRow(), formula.getColumn(), formatListener.formatNumberDateCell(formula));
+                    }
+                    break;
+                case StringRecord.sid:
+                    if (pendingStringFormula != null) {
+                        cell(pendingStringFormula.getRow(), pendingStringFormula.getColumn(), ((StringRecord) record).getString());
+                        pendingStringFormula = null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void cell(int row, int col, String value) {
+            if (sheetIndex != 0) {
+                return;
+            }
+            if (row != currentRow) {
+                finishRow();
+                currentRow = row;
+                collector.startRow();
+            }
+            collector.cell(col, value);
+        }
+
+        private void finishRow() {
+            if (currentRow >= 0) {
+                collector.endRow(currentRow + 1);
+                currentRow = -1;
+            }
+        }
+    }
+}
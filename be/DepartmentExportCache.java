@@ -0,0 +1,165 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the last generated export file per key (format and paging) on disk, tagged with the
+ * {@link DepartmentDataVersion} stamp it was generated at. A request at the same stamp is served
+ * by copying the file; otherwise the export is written to the client and to a new file at the
+ * same time, and the file replaces the old one only if the export finished. At most
+ * {@code department.export.cache.max-entries} files are kept, least recently used first out.
+ * A file is also regenerated once it is older than {@code department.export.cache.ttl}, which
+ * bounds how long changes that bypass the stamp (plain SQL in other modules) are served.
+ */
+@Component
+public class DepartmentExportCache {
+
+    @FunctionalInterface
+    public interface ArtifactWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private static final class Entry {
+        private final long stamp;
+        private final Path file;
+        private final long createdNanos = System.nanoTime();
+
+        private Entry(long stamp, Path file) {
+            this.stamp = stamp;
+            this.file = file;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public DepartmentExportCache(@Value("${department.export.cache.max-entries:4}") int maxEntries,
+                                 @Value("${department.export.cache.ttl:PT10M}") Duration ttl) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Writes the artifact for {@code key} at {@code stamp} to {@code out}, from the cache when
+     * possible, otherwise through {@code writer}.
+     *
+     * @return whether the artifact came from the cache
+     */
+    public boolean serve(String key, long stamp, OutputStream out, ArtifactWriter writer) throws IOException {
+        Path cached = lookup(key, stamp);
+        if (cached != null) {
+            try {
+                Files.copy(cached, out);
+                return true;
+            } catch (NoSuchFileException e) {
+                // Vừa bị thay bởi request khác, tạo lại bên dưới
+            }
+        }
+        if (maxEntries <= 0) {
+            writer.write(out);
+            return false;
+        }
+
+        Path file = Files.createTempFile("department-export-cache", ".bin");
+        boolean stored = false;
+        try {
+            try (OutputStream fileOut = Files.newOutputStream(file)) {
+                writer.write(new TeeOutputStream(out, fileOut));
+            }
+            store(key, new Entry(stamp, file));
+            stored = true;
+            return false;
+        } finally {
+            if (!stored) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private synchronized Path lookup(String key, long stamp) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.stamp == stamp && System.nanoTime() - entry.createdNanos < ttlNanos
+                ? entry.file : null;
+    }
+
+    private void store(String key, Entry entry) throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            Entry current = entries.get(key);
+            if (current != null && current.stamp > entry.stamp) {
+                // Đã có bản mới hơn trong lúc file này được ghi
+                obsolete.add(entry.file);
+            } else {
+                Entry previous = entries.put(key, entry);
+                if (previous != null) {
+                    obsolete.add(previous.file);
+                }
+                Iterator<Entry> eldest = entries.values().iterator();
+                while (entries.size() > maxEntries && eldest.hasNext()) {
+                    obsolete.add(eldest.next().file);
+                    eldest.remove();
+                }
+            }
+        }
+        for (Path path : obsolete) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @PreDestroy
+    synchronized void clear() throws IOException {
+        for (Entry entry : entries.values()) {
+            Files.deleteIfExists(entry.file);
+        }
+        entries.clear();
+    }
+
+    private static final class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        private TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Không đóng stream của response, file được đóng bởi serve()
+            flush();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.example.hcm25_cpl_ks_java_01_lms.course.Course;
+import com.example.hcm25_cpl_ks_java_01_lms.location.Location;
+import com.example.hcm25_cpl_ks_java_01_lms.user.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Set-based writer for imported departments.
+ * Each chunk resolves its department names with a few {@code IN (...)} queries, its location
+ * names through {@link DepartmentLocationRegistry} (missing ones created in one batch), and writes inserts/updates as JDBC batches
+ * (the entity uses IDENTITY ids, which keeps Hibernate from batching inserts).
+ * User and course members are resolved by name once per chunk and added to the join tables
+ * in batches; unknown names are reported as row errors. Callers are expected to run inside a transaction.
+ * <p>
+ * A name that another request creates between the id lookup and the insert batch is written as an
+ * update instead: the batch runs inside a savepoint, and a clash on the normalized-name index rolls
+ * back only that batch before the names are resolved again.
+ */
+@Component
+public class DepartmentImportEngine {
+    private static final int IN_CLAUSE_LIMIT = 1000;
+    private static final String INSERT_SQL = "insert into department (name, normalized_name, location_id, user_count, course_count, version) values (?, ?, ?, 0, 0, 0)";
+    private static final String UPDATE_SQL = "update department set location_id = ?, version = version + 1 where id = ?";
+    private static final String INSERT_USER_LINK_SQL = "insert into department_users (department_id, user_id) values (?, ?)";
+    private static final String INSERT_COURSE_LINK_SQL = "insert into department_courses (department_id, course_id) values (?, ?)";
+
+    private final DepartmentRepository departmentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final DepartmentMembershipResolver membershipResolver;
+    private final DepartmentLocationRegistry locationRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate savepoint;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DepartmentImportEngine(DepartmentRepository departmentRepository, JdbcTemplate jdbcTemplate,
+                                  DepartmentMembershipResolver membershipResolver,
+                                  DepartmentLocationRegistry locationRegistry,
+                                  ApplicationEventPublisher eventPublisher,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${department.import.batch-size:500}") int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Import batch size must be positive");
+        }
+        this.departmentRepository = departmentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.membershipResolver = membershipResolver;
+        this.locationRegistry = locationRegistry;
+        this.eventPublisher = eventPublisher;
+        this.savepoint = new TransactionTemplate(transactionManager);
+        this.savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public DepartmentImportResult importDepartments(List<Department> departments) {
+        long start = System.currentTimeMillis();
+        DepartmentImportResult result = new DepartmentImportResult();
+        for (int from = 0; from < departments.size(); from += batchSize) {
+            int to = Math.min(from + batchSize, departments.size());
+            List<Integer> rowNums = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                rowNums.add(i + 2); // Dòng 1 là header
+            }
+            importChunk(departments.subList(from, to), rowNums, result, result::addRowError);
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Reads the Excel stream row by row and writes every {@code batchSize} parsed rows,
+     * so only one chunk of departments is held in memory.
+     */
+    public DepartmentImportResult importExcel(InputStream inputStream) throws IOException {
+        long start = System.currentTimeMillis();
+        DepartmentImportResult result = new DepartmentImportResult();
+        List<Department> chunk = new ArrayList<>(batchSize);
+        List<Integer> rowNums = new ArrayList<>(batchSize);
+        DepartmentExcelImporter.importDepartments(inputStream, (department, rowNum) -> {
+            chunk.add(department);
+            rowNums.add(rowNum);
+            if (chunk.size() >= batchSize) {
+                importChunk(chunk, rowNums, result, result::addRowError);
+                chunk.clear();
+                rowNums.clear();
+            }
+        });
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, rowNums, result, result::addRowError);
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Writes one chunk. {@code rowNums} holds the source row of each department and is used
+     * to report unknown user/course names to {@code errorHandler}.
+     */
+    void importChunk(List<Department> chunk, List<Integer> rowNums, DepartmentImportResult result,
+                     DepartmentExcelImporter.RowErrorHandler errorHandler) {
+        // Trùng tên (sau khi chuẩn hóa) trong cùng file thì dòng sau ghi đè dòng trước
+        Map<String, Department> byName = new LinkedHashMap<>();
+        Map<String, Integer> rowNumByName = new HashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            Department department = chunk.get(i);
+            byName.put(Department.normalizeName(department.getName()), department);
+            rowNumByName.put(department.getName(), rowNums.get(i));
+        }
+        result.addRows(chunk.size());
+        result.addDuplicates(chunk.size() - byName.size());
+
+        Map<String, Long> existingIds = resolveDepartmentIds(byName.keySet());
+        Map<String, Long> locations = resolveLocations(byName.values(), result);
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        for (Map.Entry<String, Department> entry : byName.entrySet()) {
+            Department department = entry.getValue();
+            Object locationId = locationIdOf(department, locations);
+            Long existingId = existingIds.get(entry.getKey());
+            if (existingId != null) {
+                department.setId(existingId);
+                updates.add(new Object[]{locationId, existingId});
+            } else {
+                inserts.add(new Object[]{department.getName(), entry.getKey(), locationId});
+            }
+        }
+
+        try {
+            if (!inserts.isEmpty()) {
+                inserts = insertNew(inserts, updates, byName, existingIds);
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+            }
+        } catch (DataIntegrityViolationException e) {
+            // Có thể là location đã bị xóa nhưng id vẫn nằm trong registry
+            locationRegistry.evict(locations.values());
+            throw e;
+        }
+        result.addInserted(inserts.size());
+        result.addUpdated(updates.size());
+
+        if (hasMembers(byName.values())) {
+            List<String> insertedNames = new ArrayList<>();
+            byName.forEach((normalizedName, department) -> {
+                if (department.getId() == null) {
+                    insertedNames.add(normalizedName);
+                }
+            });
+            resolveDepartmentIds(insertedNames).forEach((name, id) -> byName.get(name).setId(id));
+            writeMemberships(byName.values(), rowNumByName, result, errorHandler);
+        }
+        List<String> names = new ArrayList<>();
+        byName.values().forEach(department -> names.add(department.getName()));
+        eventPublisher.publishEvent(new DepartmentChangedEvent(
+                DepartmentChangedEvent.Type.IMPORTED, existingIds.values(), names));
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Inserts the new departments; names created concurrently by another transaction are moved
+     * to {@code updates}. Returns the rows that were actually inserted.
+     */
+    private List<Object[]> insertNew(List<Object[]> inserts, List<Object[]> updates,
+                                     Map<String, Department> byName, Map<String, Long> existingIds) {
+        try {
+            savepoint.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, inserts));
+            return inserts;
+        } catch (DataIntegrityViolationException e) {
+            if (!DepartmentService.isNameConflict(e)) {
+                throw e;
+            }
+        }
+        // Unique index chỉ báo lỗi sau khi transaction kia commit nên tên đó giờ đã đọc được
+        List<String> names = new ArrayList<>(inserts.size());
+        inserts.forEach(insert -> names.add((String) insert[1]));
+        Map<String, Long> createdIds = resolveDepartmentIds(names);
+        List<Object[]> remaining = new ArrayList<>();
+        for (Object[] insert : inserts) {
+            String normalizedName = (String) insert[1];
+            Long id = createdIds.get(normalizedName);
+            if (id != null) {
+                byName.get(normalizedName).setId(id);
+                existingIds.put(normalizedName, id);
+                updates.add(new Object[]{insert[2], id});
+            } else {
+                remaining.add(insert);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, remaining);
+        }
+        return remaining;
+    }
+
+    private static boolean hasMembers(Collection<Department> departments) {
+        for (Department department : departments) {
+            if ((department.getUsers() != null && !department.getUsers().isEmpty())
+                    || (department.getCourses() != null && !department.getCourses().isEmpty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeMemberships(Collection<Department> departments, Map<String, Integer> rowNumByName,
+                                  DepartmentImportResult result, DepartmentExcelImporter.RowErrorHandler errorHandler) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> courseNames = new HashSet<>();
+        List<Long> departmentIds = new ArrayList<>();
+        for (Department department : departments) {
+            departmentIds.add(department.getId());
+            if (department.getUsers() != null) {
+                department.getUsers().forEach(user -> usernames.add(user.getUsername()));
+            }
+            if (department.getCourses() != null) {
+                department.getCourses().forEach(course -> courseNames.add(course.getName()));
+            }
+        }
+        Map<String, Long> userIds = usernames.isEmpty() ? Map.of() : membershipResolver.resolveUserIds(usernames);
+        Map<String, Long> courseIds = courseNames.isEmpty() ? Map.of() : membershipResolver.resolveCourseIds(courseNames);
+        Set<List<Long>> existingUserLinks = usernames.isEmpty() ? Set.of() : existingLinks("department_users", "user_id", departmentIds);
+        Set<List<Long>> existingCourseLinks = courseNames.isEmpty() ? Set.of() : existingLinks("department_courses", "course_id", departmentIds);
+
+        List<Object[]> userLinks = new ArrayList<>();
+        List<Object[]> courseLinks = new ArrayList<>();
+        for (Department department : departments) {
+            int rowNum = rowNumByName.get(department.getName());
+            if (department.getUsers() != null) {
+                Set<Long> seen = new HashSet<>();
+                for (User user : department.getUsers()) {
+                    Long userId = userIds.get(user.getUsername());
+                    if (userId == null) {
+                        errorHandler.onError(rowNum, "Unknown user '" + user.getUsername() + "'");
+                    } else if (seen.add(userId) && !existingUserLinks.contains(List.of(department.getId(), userId))) {
+                        userLinks.add(new Object[]{department.getId(), userId});
+                    }
+                }
+            }
+            if (department.getCourses() != null) {
+                Set<Long> seen = new HashSet<>();
+                for (Course course : department.getCourses()) {
+                    Long courseId = courseIds.get(course.getName());
+                    if (courseId == null) {
+                        errorHandler.onError(rowNum, "Unknown course '" + course.getName() + "'");
+                    } else if (seen.add(courseId) && !existingCourseLinks.contains(List.of(department.getId(), courseId))) {
+                        courseLinks.add(new Object[]{department.getId(), courseId});
+                    }
+                }
+            }
+        }
+
+        if (!userLinks.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_USER_LINK_SQL, userLinks);
+        }
+        if (!courseLinks.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_COURSE_LINK_SQL, courseLinks);
+        }
+        if (!userLinks.isEmpty() || !courseLinks.isEmpty()) {
+            for (int from = 0; from < departmentIds.size(); from += IN_CLAUSE_LIMIT) {
+                List<Long> part = departmentIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, departmentIds.size()));
+                jdbcTemplate.update(DepartmentCounterReconciler.RECOUNT_SQL + "where id in ("
+                        + String.join(", ", Collections.nCopies(part.size(), "?")) + ")", part.toArray());
+            }
+        }
+        result.addMemberships(userLinks.size() + courseLinks.size());
+    }
+
+    /**
+     * Reads the (department_id, member_id) pairs that already exist for the given departments.
+     */
+    private Set<List<Long>> existingLinks(String table, String memberColumn, List<Long> departmentIds) {
+        Set<List<Long>> links = new HashSet<>();
+        for (int from = 0; from < departmentIds.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> part = departmentIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, departmentIds.size()));
+            String placeholders = String.join(", ", Collections.nCopies(part.size(), "?"));
+            jdbcTemplate.query("select department_id, " + memberColumn + " from " + table +
+                            " where department_id in (" + placeholders + ")",
+                    rs -> {
+                        links.add(List.of(rs.getLong(1), rs.getLong(2)));
+                    }, part.toArray());
+        }
+        return links;
+    }
+
+    /**
+     * Maps normalized names to department ids.
+     */
+    private Map<String, Long> resolveDepartmentIds(Collection<String> normalizedNames) {
+        Map<String, Long> ids = new HashMap<>();
+        for (List<String> part : partition(normalizedNames)) {
+            for (Object[] row : departmentRepository.findIdAndNormalizedNameByNormalizedNameIn(part)) {
+                ids.put((String) row[1], (Long) row[0]);
+            }
+        }
+        return ids;
+    }
+
+    private Map<String, Long> resolveLocations(Collection<Department> departments, DepartmentImportResult result) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Department department : departments) {
+            String name = locationNameOf(department);
+            if (name != null) {
+                names.add(name);
+            }
+        }
+        return locationRegistry.resolveOrCreate(names, result::addLocationsCreated);
+    }
+
+    private Object locationIdOf(Department department, Map<String, Long> locationIds) {
+        String name = locationNameOf(department);
+        return name != null ? locationIds.get(name) : null;
+    }
+
+    private static String locationNameOf(Department department) {
+        Location location = department.getLocation();
+        if (location == null || location.getName() == null || location.getName().trim().isEmpty()) {
+            return null;
+        }
+        return location.getName();
+    }
+
+    private static List<List<String>> partition(Collection<String> values) {
+        List<String> list = new ArrayList<>(values);
+        List<List<String>> parts = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += IN_CLAUSE_LIMIT) {
+            parts.add(list.subList(from, Math.min(from + IN_CLAUSE_LIMIT, list.size())));
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Progress of an asynchronous department import, polled through the import job endpoint.
+ */
+@Getter
+public class DepartmentImportJob {
+    public enum Status {QUEUED, RUNNING, COMPLETED, FAILED}
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final String id = UUID.randomUUID().toString();
+    private final String fileName;
+    private final Instant submittedAt = Instant.now();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile int rowsProcessed;
+    private volatile int inserted;
+    private volatile int updated;
+    private volatile int errorCount;
+    private volatile String message;
+    private final List<String> errors = new ArrayList<>();
+
+    DepartmentImportJob(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public double getRowsPerSecond() {
+        if (startedAt == null) {
+            return 0;
+        }
+        long millis = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now()).toMillis();
+        return millis > 0 ? rowsProcessed * 1000.0 / millis : rowsProcessed;
+    }
+
+    void start() {
+        startedAt = Instant.now();
+        status = Status.RUNNING;
+    }
+
+    void progress(DepartmentImportResult result) {
+        rowsProcessed = result.getRowsProcessed();
+        inserted = result.getInserted();
+        updated = result.getUpdated();
+    }
+
+    void rowError(int rowNum, String error) {
+        errorCount++;
+        synchronized (errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Row " + rowNum + ": " + error);
+            }
+        }
+    }
+
+    void complete(DepartmentImportResult result) {
+        progress(result);
+        message = result.toString();
+        finishedAt = Instant.now();
+        status = Status.COMPLETED;
+    }
+
+    void fail(String error) {
+        message = error;
+        finishedAt = Instant.now();
+        status = Status.FAILED;
+    }
+}
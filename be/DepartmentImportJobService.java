@@ -0,0 +1,136 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Runs Excel imports in the background on a bounded worker pool.
+ * The upload is spooled to a temp file, then parsed and persisted in chunks,
+ * each chunk in its own transaction, while the job object reports progress.
+ */
+@Service
+public class DepartmentImportJobService {
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+
+    private final DepartmentImportEngine departmentImportEngine;
+    private final DepartmentMetrics departmentMetrics;
+    private final DepartmentWorkLimiter departmentWorkLimiter;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, DepartmentImportJob> jobs = new ConcurrentHashMap<>();
+
+    public DepartmentImportJobService(DepartmentImportEngine departmentImportEngine,
+                                      DepartmentMetrics departmentMetrics,
+                                      DepartmentWorkLimiter departmentWorkLimiter,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${department.import.workers:2}") int workers,
+                                      @Value("${department.import.queue-capacity:20}") int queueCapacity,
+                                      @Value(DepartmentVirtualThreadConfig.ENABLED) boolean virtualThreads) {
+        this.departmentImportEngine = departmentImportEngine;
+        this.departmentMetrics = departmentMetrics;
+        this.departmentWorkLimiter = departmentWorkLimiter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                DepartmentVirtualThreadConfig.threadFactory(virtualThreads, "department-import"));
+    }
+
+    /**
+     * Queues the file for import and returns immediately.
+     *
+     * @throws RejectedExecutionException when the worker pool and its queue are full
+     */
+    public DepartmentImportJob submit(MultipartFile file) throws IOException {
+        removeExpiredJobs();
+        Path tempFile = Files.createTempFile("department-import-job", ".upload");
+        file.transferTo(tempFile);
+
+        DepartmentImportJob job = new DepartmentImportJob(file.getOriginalFilename());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, tempFile));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<DepartmentImportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(DepartmentImportJob job, Path file) {
+        // Job chờ đến lượt thay vì bị từ chối, số job chạy đồng thời đã bị giới hạn bởi pool
+        try (DepartmentWorkLimiter.Permit permit = departmentWorkLimiter.acquireUninterruptibly()) {
+            runImport(job, file);
+        }
+    }
+
+    private void runImport(DepartmentImportJob job, Path file) {
+        job.start();
+        departmentMetrics.importStarted();
+        DepartmentImportResult result = new DepartmentImportResult();
+        List<Department> chunk = new ArrayList<>(departmentImportEngine.getBatchSize());
+        List<Integer> rowNums = new ArrayList<>(departmentImportEngine.getBatchSize());
+        try (InputStream in = Files.newInputStream(file)) {
+            DepartmentExcelImporter.importDepartments(in, (department, rowNum) -> {
+                chunk.add(department);
+                rowNums.add(rowNum);
+                if (chunk.size() >= departmentImportEngine.getBatchSize()) {
+                    writeChunk(chunk, rowNums, result, job);
+                }
+            }, job::rowError);
+            if (!chunk.isEmpty()) {
+                writeChunk(chunk, rowNums, result, job);
+            }
+            result.setElapsedMillis(Duration.between(job.getStartedAt(), Instant.now()).toMillis());
+            job.complete(result);
+        } catch (Exception e) {
+            job.fail("Failed to import: " + e.getMessage());
+        } finally {
+            departmentMetrics.importFinished(result);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // File tạm sẽ được hệ điều hành dọn sau
+            }
+        }
+    }
+
+    private void writeChunk(List<Department> chunk, List<Integer> rowNums, DepartmentImportResult result,
+                            DepartmentImportJob job) {
+        transactionTemplate.executeWithoutResult(status ->
+                departmentImportEngine.importChunk(chunk, rowNums, result, job::rowError));
+        chunk.clear();
+        rowNums.clear();
+        job.progress(result);
+    }
+
+    private void removeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.isDone() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counters collected while importing departments, including the achieved throughput.
+ */
+@Getter
+public class DepartmentImportResult {
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private int rowsProcessed;
+    private int inserted;
+    private int updated;
+    private int duplicatesInFile;
+    private int locationsCreated;
+    private int membershipsAdded;
+    private int rowErrorCount;
+    private final List<String> rowErrors = new ArrayList<>();
+    private long elapsedMillis;
+
+    void addRows(int rows) {
+        rowsProcessed += rows;
+    }
+
+    void addInserted(int count) {
+        inserted += count;
+    }
+
+    void addUpdated(int count) {
+        updated += count;
+    }
+
+    void addDuplicates(int count) {
+        duplicatesInFile += count;
+    }
+
+    void addLocationsCreated(int count) {
+        locationsCreated += count;
+    }
+
+    void addMemberships(int count) {
+        membershipsAdded += count;
+    }
+
+    void addRowError(int rowNum, String error) {
+        rowErrorCount++;
+        if (rowErrors.size() < MAX_REPORTED_ERRORS) {
+            rowErrors.add("Row " + rowNum + ": " + error);
+        }
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis > 0 ? rowsProcessed * 1000.0 / elapsedMillis : rowsProcessed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows (%d inserted, %d updated, %d duplicates, %d new locations, %d memberships, %d row errors) in %d ms, %.0f rows/s",
+                rowsProcessed, inserted, updated, duplicatesInFile, locationsCreated, membershipsAdded, rowErrorCount,
+                elapsedMillis, getRowsPerSecond());
+    }
+}
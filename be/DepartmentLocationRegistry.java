@@ -0,0 +1,187 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Location name → id map used by every department write instead of one
+ * {@code findByName} per row. It is loaded when the application starts and reloaded
+ * periodically; names it does not know yet are read (and, if needed, created) in bulk.
+ * Ids read or created inside a transaction are only remembered after that transaction
+ * commits, since the select can see locations the same, still uncommitted, transaction
+ * created. Writers {@link #evict} ids that failed a foreign key, e.g. locations deleted by
+ * the location module since the last reload, and {@link DepartmentReferenceListener} evicts
+ * locations renamed or deleted through JPA. When a name has several rows the lowest id
+ * wins, like the {@code min(l.id)} of the staged bulk import.
+ */
+@Component
+public class DepartmentLocationRegistry {
+    private static final int IN_CLAUSE_LIMIT = 1000;
+    private static final String DEFAULT_ADDRESS = "N/A";
+    private static final String LOCK_TABLE = "department_location_lock";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, Long> idsByName = new ConcurrentHashMap<>();
+
+    public DepartmentLocationRegistry(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void createLockTable() {
+        jdbcTemplate.execute("create table if not exists " + LOCK_TABLE + " (id integer not null primary key)");
+        try {
+            jdbcTemplate.update("insert into " + LOCK_TABLE + " (id) values (1)");
+        } catch (DataAccessException e) {
+            // Row already exists
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${department.locations.refresh-interval:PT10M}")
+    public void reload() {
+        Map<String, Long> loaded = new HashMap<>();
+        jdbcTemplate.query("select name, min(id) from location group by name",
+                rs -> {
+                    loaded.put(rs.getString(1), rs.getLong(2));
+                });
+        // Tên bị xóa/đổi ở module location sẽ biến mất sau lần nạp lại
+        idsByName.keySet().retainAll(loaded.keySet());
+        idsByName.putAll(loaded);
+    }
+
+    /**
+     * Returns the id of the location called {@code name}, creating it with {@code address}
+     * (or "N/A") when there is none. Blank names resolve to {@code null}.
+     */
+    public Long resolveOrCreate(String name, String address) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        Map<String, String> addressByName = new HashMap<>();
+        addressByName.put(name, address);
+        return resolveOrCreate(addressByName, created -> { }).get(name);
+    }
+
+    /**
+     * Returns the ids of all {@code names}, creating the missing ones with address "N/A".
+     */
+    public Map<String, Long> resolveOrCreate(Collection<String> names) {
+        return resolveOrCreate(names, created -> { });
+    }
+
+    Map<String, Long> resolveOrCreate(Collection<String> names, IntConsumer createdCount) {
+        Map<String, String> addressByName = new LinkedHashMap<>();
+        for (String name : names) {
+            if (name != null && !name.trim().isEmpty()) {
+                addressByName.put(name, null);
+            }
+        }
+        return resolveOrCreate(addressByName, createdCount);
+    }
+
+    /**
+     * One select for the names not cached yet, then one batched insert for those still
+     * missing. The location table has no unique key on {@code name}, so writers that need to
+     * create locations first lock the single row of {@value #LOCK_TABLE} (held until their
+     * transaction ends) and select the missing names again; a concurrent import that created
+     * the same names has committed by then and its rows are reused instead of duplicated.
+     */
+    private Map<String, Long> resolveOrCreate(Map<String, String> addressByName, IntConsumer createdCount) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String name : addressByName.keySet()) {
+            Long id = idsByName.get(name);
+            if (id != null) {
+                ids.put(name, id);
+            } else {
+                missing.add(name);
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        Map<String, Long> found = selectIds(missing);
+        if (found.size() < missing.size()) {
+            jdbcTemplate.queryForList("select id from " + LOCK_TABLE + " where id = 1 for update", Integer.class);
+            found = selectIds(missing);
+        }
+        ids.putAll(found);
+        rememberAfterCommit(found);
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<String> inserted = new ArrayList<>();
+        for (String name : missing) {
+            if (!found.containsKey(name)) {
+                String address = addressByName.get(name);
+                inserts.add(new Object[]{name, address != null ? address : DEFAULT_ADDRESS});
+                inserted.add(name);
+            }
+        }
+        if (inserts.isEmpty()) {
+            return ids;
+        }
+        jdbcTemplate.batchUpdate("insert into location (name, address) values (?, ?)", inserts);
+        Map<String, Long> created = selectIds(inserted);
+        ids.putAll(created);
+        createdCount.accept(inserted.size());
+        rememberAfterCommit(created);
+        return ids;
+    }
+
+    /**
+     * Forgets the given location ids, so the next lookup of their names reads the table again.
+     */
+    public void evict(Collection<Long> ids) {
+        if (!ids.isEmpty()) {
+            idsByName.values().removeAll(ids);
+        }
+    }
+
+    private void rememberAfterCommit(Map<String, Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            idsByName.putAll(ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                idsByName.putAll(ids);
+            }
+        });
+    }
+
+    private Map<String, Long> selectIds(List<String> names) {
+        Map<String, Long> ids = new HashMap<>();
+        for (int from = 0; from < names.size(); from += IN_CLAUSE_LIMIT) {
+            List<String> part = names.subList(from, Math.min(from + IN_CLAUSE_LIMIT, names.size()));
+            jdbcTemplate.query("select name, min(id) from location where name in (" +
+                    String.join(", ", Collections.nCopies(part.size(), "?")) + ") group by name",
+                    rs -> {
+                        ids.put(rs.getString(1), rs.getLong(2));
+                    }, part.toArray());
+        }
+        return ids;
+    }
+}
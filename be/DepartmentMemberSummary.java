@@ -0,0 +1,25 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One user or course of a department, as listed by the paged membership endpoints.
+ * For users {@code name} is the username and {@code displayName} the full name;
+ * courses only have a {@code name}.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class DepartmentMemberSummary {
+    private Long id;
+    private String name;
+    private String displayName;
+
+    public DepartmentMemberSummary(Long id, String name) {
+        this(id, name, name);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Users and courses to add to / remove from one department, as sent to the batch membership endpoint.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class DepartmentMembershipChange {
+    private Long departmentId;
+    private List<Long> addUserIds;
+    private List<Long> removeUserIds;
+    private List<Long> addCourseIds;
+    private List<Long> removeCourseIds;
+}
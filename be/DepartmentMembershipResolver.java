@@ -0,0 +1,43 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves usernames and course names to ids in bulk, one {@code IN (...)} query per
+ * thousand distinct names, for import paths that only know members by name.
+ */
+@Component
+public class DepartmentMembershipResolver {
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public Map<String, Long> resolveUserIds(Collection<String> usernames) {
+        return resolve("select u.username, u.id from User u where u.username in :names", usernames);
+    }
+
+    public Map<String, Long> resolveCourseIds(Collection<String> courseNames) {
+        return resolve("select c.name, c.id from Course c where c.name in :names", courseNames);
+    }
+
+    private Map<String, Long> resolve(String jpql, Collection<String> names) {
+        Map<String, Long> ids = new HashMap<>();
+        List<String> list = new ArrayList<>(names);
+        for (int from = 0; from < list.size(); from += IN_CLAUSE_LIMIT) {
+            entityManager.createQuery(jpql, Object[].class)
+                    .setParameter("names", list.subList(from, Math.min(from + IN_CLAUSE_LIMIT, list.size())))
+                    .getResultList()
+                    .forEach(row -> ids.putIfAbsent((String) row[0], ((Number) row[1]).longValue()));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.Getter;
+
+/**
+ * Number of join-table rows inserted and deleted by a membership change.
+ */
+@Getter
+public class DepartmentMembershipResult {
+    private int added;
+    private int removed;
+
+    void addAdded(int count) {
+        added += count;
+    }
+
+    void addRemoved(int count) {
+        removed += count;
+    }
+
+    void add(DepartmentMembershipResult other) {
+        added += other.added;
+        removed += other.removed;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Membership changes written straight to {@code department_users} / {@code department_courses}.
+ * Each operation inserts or deletes only the rows that actually change, instead of letting
+ * Hibernate rewrite the whole {@code List}-typed bag of the department.
+ */
+@Service
+public class DepartmentMembershipService {
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public DepartmentMembershipService(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    private enum Link {
+        USERS("department_users", "user_id", "user_count"),
+        COURSES("department_courses", "course_id", "course_count");
+
+        private final String table;
+        private final String memberColumn;
+        private final String countColumn;
+
+        Link(String table, String memberColumn, String countColumn) {
+            this.table = table;
+            this.memberColumn = memberColumn;
+            this.countColumn = countColumn;
+        }
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "membership"})
+    @Transactional
+    public DepartmentMembershipResult addUsers(Long departmentId, Collection<Long> userIds) {
+        return apply(new DepartmentMembershipChange(departmentId, listOf(userIds), null, null, null));
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "membership"})
+    @Transactional
+    public DepartmentMembershipResult removeUsers(Long departmentId, Collection<Long> userIds) {
+        return apply(new DepartmentMembershipChange(departmentId, null, listOf(userIds), null, null));
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "membership"})
+    @Transactional
+    public DepartmentMembershipResult addCourses(Long departmentId, Collection<Long> courseIds) {
+        return apply(new DepartmentMembershipChange(departmentId, null, null, listOf(courseIds), null));
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "membership"})
+    @Transactional
+    public DepartmentMembershipResult removeCourses(Long departmentId, Collection<Long> courseIds) {
+        return apply(new DepartmentMembershipChange(departmentId, null, null, null, listOf(courseIds)));
+    }
+
+    /**
+     * Applies all changes in one transaction; if any of them fails, none is kept.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "membership"})
+    @Transactional
+    public DepartmentMembershipResult applyChanges(List<DepartmentMembershipChange> changes) {
+        if (changes == null || changes.isEmpty()) {
+            throw new IllegalArgumentException("No membership changes given");
+        }
+        DepartmentMembershipResult total = new DepartmentMembershipResult();
+        for (DepartmentMembershipChange change : changes) {
+            total.add(apply(change));
+        }
+        return total;
+    }
+
+    /**
+     * Makes the members of department {@code departmentId} exactly {@code userIds} / {@code courseIds}
+     * by diffing against the join tables; a {@code null} list is left unchanged. Used by
+     * {@link DepartmentService#updateDepartment}.
+     */
+    @Transactional
+    public DepartmentMembershipResult replaceMembers(Long departmentId, Collection<Long> userIds, Collection<Long> courseIds) {
+        DepartmentMembershipResult result = new DepartmentMembershipResult();
+        if (userIds == null && courseIds == null) {
+            return result;
+        }
+        Department department = findDepartment(departmentId);
+        entityManager.flush();
+        replace(Link.USERS, department.getId(), userIds, result);
+        replace(Link.COURSES, department.getId(), courseIds, result);
+        if (result.getAdded() + result.getRemoved() > 0) {
+            entityManager.refresh(department);
+        }
+        return result;
+    }
+
+    private DepartmentMembershipResult apply(DepartmentMembershipChange change) {
+        Department department = findDepartment(change.getDepartmentId());
+        entityManager.flush();
+        DepartmentMembershipResult result = new DepartmentMembershipResult();
+        for (Link link : Link.values()) {
+            boolean users = link == Link.USERS;
+            int removed = delete(link, department.getId(), distinct(users ? change.getRemoveUserIds() : change.getRemoveCourseIds()));
+            int added = insertMissing(link, department.getId(), distinct(users ? change.getAddUserIds() : change.getAddCourseIds()));
+            adjustCount(link, department.getId(), added, removed);
+            result.addRemoved(removed);
+            result.addAdded(added);
+        }
+        if (result.getAdded() + result.getRemoved() > 0) {
+            // Collection đã nạp trong persistence context không còn đúng sau khi ghi bằng JDBC
+            entityManager.refresh(department);
+            eventPublisher.publishEvent(DepartmentChangedEvent.of(DepartmentChangedEvent.Type.UPDATED,
+                    department.getId(), department.getName()));
+        }
+        return result;
+    }
+
+    private Department findDepartment(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("Invalid department ID");
+        }
+        // Khóa dòng department trước khi đọc rồi ghi bảng nối: hai request thêm cùng thành viên
+        // chạy nối tiếp nhau thay vì cùng thấy "chưa có" và chèn trùng
+        Department department = entityManager.find(Department.class, id, LockModeType.PESSIMISTIC_WRITE);
+        if (department == null) {
+            throw new EntityNotFoundException("Department not found with id: " + id);
+        }
+        return department;
+    }
+
+    private void replace(Link link, Long departmentId, Collection<Long> memberIds, DepartmentMembershipResult result) {
+        if (memberIds == null) {
+            // null nghĩa là không đổi, khác với danh sách rỗng
+            return;
+        }
+        Set<Long> wanted = distinct(memberIds);
+        Set<Long> current = new LinkedHashSet<>(jdbcTemplate.queryForList(
+                "select " + link.memberColumn + " from " + link.table + " where department_id = ?", Long.class, departmentId));
+        List<Long> removed = new ArrayList<>();
+        for (Long id : current) {
+            if (!wanted.contains(id)) {
+                removed.add(id);
+            }
+        }
+        List<Object[]> added = new ArrayList<>();
+        for (Long id : wanted) {
+            if (!current.contains(id)) {
+                added.add(new Object[]{departmentId, id});
+            }
+        }
+        int deleted = delete(link, departmentId, removed);
+        if (!added.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql(link), added);
+        }
+        adjustCount(link, departmentId, added.size(), deleted);
+        result.addRemoved(deleted);
+        result.addAdded(added.size());
+    }
+
+    private int insertMissing(Link link, Long departmentId, Collection<Long> memberIds) {
+        if (memberIds.isEmpty()) {
+            return 0;
+        }
+        Set<Long> existing = new LinkedHashSet<>();
+        for (List<Long> part : partition(memberIds)) {
+            List<Object> args = new ArrayList<>(part.size() + 1);
+            args.add(departmentId);
+            args.addAll(part);
+            existing.addAll(jdbcTemplate.queryForList("select " + link.memberColumn + " from " + link.table +
+                    " where department_id = ? and " + link.memberColumn + " in (" + placeholders(part.size()) + ")",
+                    Long.class, args.toArray()));
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (Long id : memberIds) {
+            if (!existing.contains(id)) {
+                rows.add(new Object[]{departmentId, id});
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertSql(link), rows);
+        }
+        return rows.size();
+    }
+
+    private int delete(Link link, Long departmentId, Collection<Long> memberIds) {
+        int deleted = 0;
+        for (List<Long> part : partition(memberIds)) {
+            List<Object> args = new ArrayList<>(part.size() + 1);
+            args.add(departmentId);
+            args.addAll(part);
+            deleted += jdbcTemplate.update("delete from " + link.table + " where department_id = ? and " +
+                    link.memberColumn + " in (" + placeholders(part.size()) + ")", args.toArray());
+        }
+        return deleted;
+    }
+
+    /**
+     * Keeps the denormalized {@code user_count} / {@code course_count} of the department in step
+     * with the join rows written in the same transaction, and bumps its version.
+     */
+    private void adjustCount(Link link, Long departmentId, int added, int removed) {
+        if (added + removed > 0) {
+            jdbcTemplate.update("update department set " + link.countColumn + " = " + link.countColumn + " + ?, " +
+                    "version = version + 1 where id = ?", added - removed, departmentId);
+        }
+    }
+
+    private static String insertSql(Link link) {
+        return "insert into " + link.table + " (department_id, " + link.memberColumn + ") values (?, ?)";
+    }
+
+    private static List<Long> listOf(Collection<Long> ids) {
+        return ids != null ? new ArrayList<>(ids) : null;
+    }
+
+    private static Set<Long> distinct(Collection<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        if (ids != null) {
+            ids.stream().filter(Objects::nonNull).forEach(distinct::add);
+        }
+        return distinct;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static List<List<Long>> partition(Collection<Long> values) {
+        List<Long> list = new ArrayList<>(values);
+        List<List<Long>> parts = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += IN_CLAUSE_LIMIT) {
+            parts.add(list.subList(from, Math.min(from + IN_CLAUSE_LIMIT, list.size())));
+        }
+        return parts;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters of the department module, all tagged with the controller that served the request
+ * ({@code DepartmentController}, {@code DepartmentAPIController}, or {@code background}).
+ * Service operation timers are recorded through {@code @Timed} (see {@link DepartmentMetricsConfig}).
+ */
+@Component
+public class DepartmentMetrics {
+    public static final String OPERATION_TIMER = "department.operation";
+    static final String BACKGROUND = "background";
+
+    private final MeterRegistry registry;
+    private final AtomicInteger importsInFlight = new AtomicInteger();
+    private final DistributionSummary usersPerDepartment;
+    private final DistributionSummary coursesPerDepartment;
+
+    public DepartmentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("department.imports.in.flight", importsInFlight, AtomicInteger::get)
+                .description("Department imports currently running")
+                .register(registry);
+        this.usersPerDepartment = DistributionSummary.builder("department.users.per.department")
+                .description("Users per exported department")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.coursesPerDepartment = DistributionSummary.builder("department.courses.per.department")
+                .description("Courses per exported department")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void importStarted() {
+        importsInFlight.incrementAndGet();
+    }
+
+    public void importFinished(DepartmentImportResult result) {
+        importsInFlight.decrementAndGet();
+        if (result != null) {
+            Counter.builder("department.rows.imported")
+                    .tag("endpoint", currentEndpoint())
+                    .register(registry)
+                    .increment(result.getRowsProcessed());
+        }
+    }
+
+    public void recordMembership(long users, long courses) {
+        usersPerDepartment.record(users);
+        coursesPerDepartment.record(courses);
+    }
+
+    public void recordExport(String format, long rows, long bytes) {
+        String endpoint = currentEndpoint();
+        Counter.builder("department.rows.exported")
+                .tags("endpoint", endpoint, "format", format)
+                .register(registry)
+                .increment(rows);
+        DistributionSummary.builder("department.export.size")
+                .baseUnit("bytes")
+                .tags("endpoint", endpoint, "format", format)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    public CountingOutputStream countBytes(OutputStream out) {
+        return new CountingOutputStream(out);
+    }
+
+    /**
+     * Simple name of the controller handling the current request, or {@code background}
+     * for work that does not run on a request thread (import jobs, scheduled tasks).
+     */
+    public static String currentEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+            Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+            if (handler instanceof HandlerMethod) {
+                return ((HandlerMethod) handler).getBeanType().getSimpleName();
+            }
+            return request.getRequestURI().startsWith("/api/") ? "DepartmentAPIController" : "DepartmentController";
+        }
+        return BACKGROUND;
+    }
+
+    public static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
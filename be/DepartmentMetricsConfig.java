@@ -0,0 +1,42 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the aspect behind {@code @Timed} on {@link DepartmentService}, adding the
+ * {@code endpoint} tag of the calling controller, and gives every
+ * {@link DepartmentMetrics#OPERATION_TIMER} timer p50/p95/p99 and a percentile histogram. Meters are published through Actuator;
+ * expose {@code prometheus} in {@code management.endpoints.web.exposure.include} to scrape them.
+ */
+@Configuration
+public class DepartmentMetricsConfig {
+
+    @Bean
+    public TimedAspect departmentTimedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry, joinPoint -> Tags.of("endpoint", DepartmentMetrics.currentEndpoint()));
+    }
+
+    @Bean
+    public MeterFilter departmentOperationDistribution() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!id.getName().equals(DepartmentMetrics.OPERATION_TIMER)) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentiles(0.5, 0.95, 0.99)
+                        .percentilesHistogram(true)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills {@code normalized_name} for departments written before the column existed, so the
+ * unique index covers them too. Rows whose normalized name already belongs to another
+ * department are left empty and counted in {@code department.names.conflicts}; they have to
+ * be renamed by hand.
+ */
+@Component
+public class DepartmentNameBackfill {
+    private static final String UPDATE_SQL = "update department set normalized_name = ? where id = ? and normalized_name is null";
+
+    private final JdbcTemplate jdbcTemplate;
+    // Cùng DataSource, giới hạn số dòng đọc mỗi lô
+    private final JdbcTemplate batchReader;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter conflicts;
+
+    public DepartmentNameBackfill(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  MeterRegistry registry,
+                                  @Value("${department.import.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchReader = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.batchReader.setMaxRows(batchSize);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.conflicts = Counter.builder("department.names.conflicts")
+                .description("Legacy departments whose normalized name clashes with another department")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long afterId = 0;
+        while (true) {
+            List<Object[]> rows = nextBatch(afterId);
+            if (rows.isEmpty()) {
+                return;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE_SQL, rows));
+            } catch (DataIntegrityViolationException e) {
+                // Có tên trùng trong lô: ghi lại từng dòng để chỉ bỏ qua các dòng bị trùng
+                for (Object[] row : rows) {
+                    updateRow(row);
+                }
+            }
+            afterId = (Long) rows.get(rows.size() - 1)[1];
+        }
+    }
+
+    private List<Object[]> nextBatch(long afterId) {
+        List<Object[]> rows = new ArrayList<>();
+        batchReader.query("select id, name from department where normalized_name is null and id > ? order by id",
+                rs -> {
+                    rows.add(new Object[]{Department.normalizeName(rs.getString(2)), rs.getLong(1)});
+                }, afterId);
+        return rows;
+    }
+
+    private void updateRow(Object[] row) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(UPDATE_SQL, row));
+        } catch (DataIntegrityViolationException e) {
+            conflicts.increment();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index over department names.
+ * Names are normalized (lower case, Vietnamese diacritics and "đ" folded, whitespace collapsed),
+ * so "phong ke toan" finds "Phòng Kế Toán". Terms of three or more characters are answered
+ * from the trigram postings, shorter ones by scanning the normalized names.
+ * The index is built when the application starts and kept in sync through {@link DepartmentChangedEvent}s.
+ */
+@Component
+public class DepartmentNameIndex {
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final DepartmentRepository departmentRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> docsById = new HashMap<>();
+    private final List<IndexedName> docs = new ArrayList<>();
+    // Số thứ tự doc đã bị xóa, dùng lại khi thêm tên mới để docs không phình ra
+    private final Deque<Integer> freeDocs = new ArrayDeque<>();
+    private final Map<String, Postings> postings = new HashMap<>();
+    // Rebuild chạy tuần tự; các event đến trong lúc rebuild được áp dụng lại sau khi nạp snapshot
+    private final Object rebuildMonitor = new Object();
+    private final List<DepartmentChangedEvent> eventsDuringRebuild = new ArrayList<>();
+    private boolean rebuilding;
+    private volatile boolean ready;
+
+    public DepartmentNameIndex(DepartmentRepository departmentRepository) {
+        this.departmentRepository = departmentRepository;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Replaces the index with a fresh snapshot of all names. Changes committed while the
+     * snapshot is read may be missing from it, so the events that arrive during a rebuild are
+     * applied again once the snapshot is in place.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildMonitor) {
+            synchronized (eventsDuringRebuild) {
+                rebuilding = true;
+                eventsDuringRebuild.clear();
+            }
+            List<DepartmentChangedEvent> replay;
+            try {
+                List<Object[]> rows = departmentRepository.findAllIdAndName();
+                lock.writeLock().lock();
+                try {
+                    docsById.clear();
+                    docs.clear();
+                    freeDocs.clear();
+                    postings.clear();
+                    for (Object[] row : rows) {
+                        put((Long) row[0], (String) row[1]);
+                    }
+                    ready = true;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } finally {
+                synchronized (eventsDuringRebuild) {
+                    rebuilding = false;
+                    replay = new ArrayList<>(eventsDuringRebuild);
+                    eventsDuringRebuild.clear();
+                }
+            }
+            replay.forEach(this::apply);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDepartmentChanged(DepartmentChangedEvent event) {
+        if (event.isWholeTable()) {
+            rebuild();
+            return;
+        }
+        synchronized (eventsDuringRebuild) {
+            if (rebuilding) {
+                eventsDuringRebuild.add(event);
+            }
+        }
+        apply(event);
+    }
+
+    /**
+     * Re-reads the departments named by {@code event} and updates their entries; safe to repeat.
+     */
+    private void apply(DepartmentChangedEvent event) {
+        Map<Long, String> current = new HashMap<>();
+        if (event.getType() != DepartmentChangedEvent.Type.DELETED) {
+            if (!event.getIds().isEmpty()) {
+                departmentRepository.findIdAndNameByIdIn(event.getIds()).forEach(row -> current.put((Long) row[0], (String) row[1]));
+            }
+            if (!event.getNames().isEmpty()) {
+                departmentRepository.findIdAndNameByNameIn(event.getNames()).forEach(row -> current.put((Long) row[0], (String) row[1]));
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for (Long id : event.getIds()) {
+                if (!current.containsKey(id)) {
+                    remove(id);
+                }
+            }
+            current.forEach(this::put);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of all departments whose name contains {@code term}, best matches first:
+     * exact name, then name prefix, then word prefix, then any infix; shorter names first within a group.
+     */
+    public List<Long> search(String term) {
+        String query = normalize(term);
+        if (query.isEmpty()) {
+            return List.of();
+        }
+        List<IndexedName> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (query.length() < 3) {
+                for (IndexedName doc : docs) {
+                    if (doc != null && doc.normalized.contains(query)) {
+                        matches.add(doc);
+                    }
+                }
+            } else {
+                int[] candidates = candidates(query);
+                for (int doc : candidates) {
+                    IndexedName name = docs.get(doc);
+                    if (name != null && name.normalized.contains(query)) {
+                        matches.add(name);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(Comparator.<IndexedName>comparingInt(name -> rank(name.normalized, query))
+                .thenComparingInt(name -> name.normalized.length())
+                .thenComparingLong(name -> name.id));
+        List<Long> ids = new ArrayList<>(matches.size());
+        for (IndexedName match : matches) {
+            ids.add(match.id);
+        }
+        return ids;
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String lower = value.toLowerCase(Locale.ROOT).replace('đ', 'd');
+        String stripped = COMBINING_MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return WHITESPACE.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    private static int rank(String name, String query) {
+        if (name.equals(query)) {
+            return 0;
+        }
+        if (name.startsWith(query)) {
+            return 1;
+        }
+        return name.contains(" " + query) ? 2 : 3;
+    }
+
+    private int[] candidates(String query) {
+        List<Postings> lists = new ArrayList<>();
+        for (String gram : trigrams(query)) {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+        int[] result = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = lists.get(i).intersect(result);
+        }
+        return result;
+    }
+
+    private void put(Long id, String name) {
+        remove(id);
+        String normalized = normalize(name);
+        Integer doc = freeDocs.poll();
+        if (doc == null) {
+            doc = docs.size();
+            docs.add(null);
+        }
+        docsById.put(id, doc);
+        docs.set(doc, new IndexedName(id, normalized));
+        for (String gram : trigrams(normalized)) {
+            postings.computeIfAbsent(gram, key -> new Postings()).add(doc);
+        }
+    }
+
+    private void remove(Long id) {
+        Integer doc = docsById.remove(id);
+        if (doc == null) {
+            return;
+        }
+        for (String gram : trigrams(docs.get(doc).normalized)) {
+            Postings list = postings.get(gram);
+            if (list != null) {
+                list.remove(doc);
+                if (list.size == 0) {
+                    postings.remove(gram);
+                }
+            }
+        }
+        docs.set(doc, null);
+        freeDocs.push(doc);
+    }
+
+    private static Set<String> trigrams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= value.length(); i++) {
+            grams.add(value.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    private static final class IndexedName {
+        private final long id;
+        private final String normalized;
+
+        private IndexedName(long id, String normalized) {
+            this.id = id;
+            this.normalized = normalized;
+        }
+    }
+
+    /**
+     * Sorted list of internal document numbers containing one trigram.
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            docs[pos] = doc;
+            size++;
+        }
+
+        void remove(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+                size--;
+            }
+        }
+
+        int[] intersect(int[] sortedDocs) {
+            int[] result = new int[Math.min(size, sortedDocs.length)];
+            int count = 0;
+            for (int doc : sortedDocs) {
+                if (Arrays.binarySearch(docs, 0, size, doc) >= 0) {
+                    result[count++] = doc;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+}
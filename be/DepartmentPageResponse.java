@@ -0,0 +1,26 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+
+/**
+ * Stable JSON shape for paged department responses, instead of serializing Spring's {@link Page}.
+ */
+@AllArgsConstructor
+@Getter
+public class DepartmentPageResponse<T> {
+    private final List<T> content;
+    private final int page;
+    private final int size;
+    private final long totalElements;
+    private final int totalPages;
+    private final boolean hasNext;
+
+    public static <T> DepartmentPageResponse<T> of(Page<T> page) {
+        return new DepartmentPageResponse<>(page.getContent(), page.getNumber(), page.getSize(),
+                page.getTotalElements(), page.getTotalPages(), page.hasNext());
+    }
+}
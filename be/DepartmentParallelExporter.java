@@ -0,0 +1,174 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.annotation.Timed;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports departments in parallel: the rows are split into one id range of about equal size per worker, each shard
+ * is read with its own keyset cursor and transaction and written to its own .xlsx part, and the
+ * parts are streamed to the client as a zip. Row building and cell serialization, which dominate
+ * exports with long user/course name columns, therefore run on all cores.
+ */
+@Component
+public class DepartmentParallelExporter {
+    private final DepartmentService departmentService;
+    private final DepartmentRepository departmentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    public DepartmentParallelExporter(DepartmentService departmentService, DepartmentRepository departmentRepository,
+                                      PlatformTransactionManager transactionManager,
+                                      @Value("${department.export.parallelism:0}") int parallelism,
+                                      @Value(DepartmentVirtualThreadConfig.ENABLED) boolean virtualThreads) {
+        this.departmentService = departmentService;
+        this.departmentRepository = departmentRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.executor = Executors.newFixedThreadPool(this.parallelism,
+                DepartmentVirtualThreadConfig.threadFactory(virtualThreads, "department-export"));
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Writes the zip using at most {@code workers} shards, so the export never holds more
+     * connections than the caller was admitted for.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "export-parallel"})
+    public void exportZip(OutputStream out, int workers) throws IOException {
+        WrittenParts written = new WrittenParts();
+        List<Path> parts = new ArrayList<>();
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (long[] range : shards(Math.max(1, Math.min(workers, parallelism)))) {
+                futures.add(executor.submit(() -> writePart(range[0], range[1], written)));
+            }
+            for (Future<Path> future : futures) {
+                parts.add(awaitPart(future, futures));
+            }
+
+            try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                // Các part .xlsx đã được nén sẵn nên không nén lại
+                zip.setLevel(Deflater.NO_COMPRESSION);
+                for (int i = 0; i < parts.size(); i++) {
+                    zip.putNextEntry(new ZipEntry(String.format("departments-part-%03d.xlsx", i + 1)));
+                    Files.copy(parts.get(i), zip);
+                    zip.closeEntry();
+                }
+            }
+        } finally {
+            // Xóa cả các part đã ghi xong nhưng chưa được lấy vì một shard khác lỗi
+            for (Path part : written.close()) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    /**
+     * Splits the departments into at most {@code count} ranges of the form {@code (afterId, maxId]}
+     * holding about the same number of rows, so gaps in the ids (e.g. after bulk deletes) do not
+     * leave one shard with most of the work.
+     */
+    private List<long[]> shards(int count) {
+        List<long[]> shards = new ArrayList<>();
+        List<Object[]> rows = departmentRepository.findIdRange();
+        Object[] range = rows.isEmpty() ? null : rows.get(0);
+        if (range == null || range[0] == null) {
+            shards.add(new long[]{0L, 0L});
+            return shards;
+        }
+        long afterId = (Long) range[0] - 1;
+        for (Number boundary : departmentRepository.findIdQuantiles(count)) {
+            shards.add(new long[]{afterId, boundary.longValue()});
+            afterId = boundary.longValue();
+        }
+        return shards;
+    }
+
+    private Path writePart(long afterId, long maxId, WrittenParts written) throws IOException {
+        Path part = Files.createTempFile("department-export", ".xlsx");
+        try {
+            transactionTemplate.execute(status -> {
+                try (OutputStream partOut = Files.newOutputStream(part);
+                     Stream<Department> departments = departmentService.streamDepartmentsInRange(
+                             afterId, maxId, DepartmentService.DEFAULT_CHUNK_SIZE)) {
+                    departmentService.exportDepartmentsToExcel(departments::iterator, partOut);
+                    return null;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot write export part: " + e.getMessage(), e);
+                }
+            });
+            if (!written.add(part)) {
+                throw new CancellationException("Export aborted");
+            }
+            return part;
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+    }
+
+    private Path awaitPart(Future<Path> future, List<Future<Path>> all) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            all.forEach(f -> f.cancel(true));
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            all.forEach(f -> f.cancel(true));
+            throw new IOException("Export failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Temp files of one export. A shard that finishes after the export has given up
+     * deletes its own part instead of registering it.
+     */
+    private static final class WrittenParts {
+        private final List<Path> parts = new ArrayList<>();
+        private boolean closed;
+
+        synchronized boolean add(Path part) {
+            if (closed) {
+                return false;
+            }
+            parts.add(part);
+            return true;
+        }
+
+        synchronized List<Path> close() {
+            closed = true;
+            return new ArrayList<>(parts);
+        }
+    }
+}
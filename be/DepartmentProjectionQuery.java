@@ -0,0 +1,136 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a JPQL select for just the fields a client asked for ({@code fields=id,name,userCount}),
+ * so unused columns and the location join are only paid for when requested.
+ * Rows come back as ordered maps keyed by field name.
+ */
+@Component
+public class DepartmentProjectionQuery {
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("id", "d.id");
+        FIELDS.put("name", "d.name");
+        FIELDS.put("locationId", "l.id");
+        FIELDS.put("locationName", "l.name");
+        FIELDS.put("userCount", "d.userCount");
+        FIELDS.put("courseCount", "d.courseCount");
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Parses a comma-separated field list; {@code null} or blank selects every field.
+     */
+    public List<String> parseFields(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return new ArrayList<>(FIELDS.keySet());
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!FIELDS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown field '" + name + "', allowed fields: " + FIELDS.keySet());
+            }
+            selected.add(name);
+        }
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("No fields selected");
+        }
+        return new ArrayList<>(selected);
+    }
+
+    /**
+     * One page of departments ordered by id, optionally filtered by a case-insensitive name fragment.
+     */
+    public Page<Map<String, Object>> findPage(List<String> fields, String nameFilter, Pageable pageable) {
+        String where = nameFilter != null ? " where lower(d.name) like lower(concat('%', :name, '%'))" : "";
+        TypedQuery<Object[]> query = entityManager.createQuery(select(fields) + where + " order by d.id", Object[].class)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize());
+        TypedQuery<Long> count = entityManager.createQuery("select count(d) from Department d" + where, Long.class);
+        if (nameFilter != null) {
+            query.setParameter("name", nameFilter);
+            count.setParameter("name", nameFilter);
+        }
+        return new PageImpl<>(toMaps(fields, query.getResultList()), pageable, count.getSingleResult());
+    }
+
+    /**
+     * The selected fields of the given departments, in the order of {@code ids}.
+     */
+    public List<Map<String, Object>> findByIds(List<String> fields, Collection<Long> ids) {
+        List<String> withId = new ArrayList<>(fields);
+        if (!withId.contains("id")) {
+            withId.add("id");
+        }
+        List<Map<String, Object>> rows = toMaps(withId, entityManager
+                .createQuery(select(withId) + " where d.id in :ids", Object[].class)
+                .setParameter("ids", ids)
+                .getResultList());
+        Map<Object, Map<String, Object>> byId = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            byId.put(fields.contains("id") ? row.get("id") : row.remove("id"), row);
+        }
+        List<Map<String, Object>> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (byId.containsKey(id)) {
+                ordered.add(byId.get(id));
+            }
+        }
+        return ordered;
+    }
+
+    private static String select(List<String> fields) {
+        StringBuilder jpql = new StringBuilder("select ");
+        boolean needsLocation = false;
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                jpql.append(", ");
+            }
+            jpql.append(FIELDS.get(fields.get(i)));
+            needsLocation |= fields.get(i).startsWith("location");
+        }
+        jpql.append(" from Department d");
+        if (needsLocation) {
+            jpql.append(" left join d.location l");
+        }
+        return jpql.toString();
+    }
+
+    private static List<Map<String, Object>> toMaps(List<String> fields, List<?> rows) {
+        List<Map<String, Object>> maps = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            // Một cột duy nhất được Hibernate trả về dạng giá trị đơn thay vì mảng
+            Object[] values = row instanceof Object[] ? (Object[]) row : new Object[]{row};
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                map.put(fields.get(i), values[i]);
+            }
+            maps.add(map);
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Counts SQL statements issued by Hibernate on the current thread.
+ * Enabled with {@code department.query-count.enabled=true} (e.g. in tests) so a request
+ * can be asserted to run a fixed number of queries:
+ * <pre>
+ * DepartmentQueryCounter.reset();
+ * mockMvc.perform(get("/departments"));
+ * assertEquals(2, DepartmentQueryCounter.count());
+ * </pre>
+ * {@code DepartmentQueryBudgetBenchmark} uses it to fail when the list or detail read exceeds its budget.
+ */
+@Component
+@ConditionalOnProperty(name = "department.query-count.enabled", havingValue = "true")
+public class DepartmentQueryCounter implements StatementInspector, HibernatePropertiesCustomizer {
+    private static final ThreadLocal<long[]> COUNTER = ThreadLocal.withInitial(() -> new long[1]);
+
+    public static void reset() {
+        COUNTER.get()[0] = 0;
+    }
+
+    public static long count() {
+        return COUNTER.get()[0];
+    }
+
+    @Override
+    public String inspect(String sql) {
+        COUNTER.get()[0]++;
+        return sql;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+}
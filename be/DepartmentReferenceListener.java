@@ -0,0 +1,111 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.example.hcm25_cpl_ks_java_01_lms.course.Course;
+import com.example.hcm25_cpl_ks_java_01_lms.location.Location;
+import com.example.hcm25_cpl_ks_java_01_lms.user.User;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watches entities of other modules that department data refers to by id.
+ * When the location module renames or deletes a {@link Location} through JPA, its id is evicted
+ * from {@link DepartmentLocationRegistry} as soon as that transaction commits, instead of staying
+ * mapped to the old name until the next reload. Renames and deletes of locations, users and
+ * courses also call {@link DepartmentDataVersion#referenceChanged()}, since list, detail and
+ * export responses show them by name. Changes written with plain SQL are not seen here; the
+ * registry catches up at its periodic reload and cached export files at their TTL.
+ */
+@Component
+public class DepartmentReferenceListener implements PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+    // Listener được gọi cho mọi entity: chỉ xử lý các class này, và chỉ khi thuộc tính hiển thị
+    // trong response của department thay đổi (đổi trường khác, vd. lần đăng nhập, bỏ qua)
+    private static final Map<Class<?>, Set<String>> SHOWN_PROPERTIES = Map.of(
+            Location.class, Set.of("name"),
+            User.class, Set.of("username", "name"),
+            Course.class, Set.of("name"));
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final DepartmentLocationRegistry locationRegistry;
+    private final DepartmentDataVersion departmentDataVersion;
+
+    public DepartmentReferenceListener(EntityManagerFactory entityManagerFactory,
+                                       DepartmentLocationRegistry locationRegistry,
+                                       DepartmentDataVersion departmentDataVersion) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.locationRegistry = locationRegistry;
+        this.departmentDataVersion = departmentDataVersion;
+    }
+
+    @PostConstruct
+    void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (requiresPostCommitHandling(event.getPersister()) && shownPropertyChanged(event)) {
+            referenceChanged(event.getEntity(), event.getId());
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (requiresPostCommitHandling(event.getPersister())) {
+            referenceChanged(event.getEntity(), event.getId());
+        }
+    }
+
+    private void referenceChanged(Object entity, Object id) {
+        if (entity instanceof Location && id instanceof Long) {
+            locationRegistry.evict(List.of((Long) id));
+        }
+        departmentDataVersion.referenceChanged();
+    }
+
+    private static boolean shownPropertyChanged(PostUpdateEvent event) {
+        int[] dirty = event.getDirtyProperties();
+        if (dirty == null) {
+            // Hibernate không biết trường nào đổi (vd. merge không có snapshot)
+            return true;
+        }
+        Set<String> shown = SHOWN_PROPERTIES.get(event.getPersister().getMappedClass());
+        String[] names = event.getPersister().getPropertyNames();
+        for (int index : dirty) {
+            if (shown.contains(names[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        // Rollback: registry và ETag vẫn đúng
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        // Rollback: registry và ETag vẫn đúng
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return SHOWN_PROPERTIES.containsKey(persister.getMappedClass());
+    }
+}
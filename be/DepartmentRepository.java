@@ -2,13 +2,126 @@ package com.example.hcm25_cpl_ks_java_01_lms.department;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface DepartmentRepository extends JpaRepository<Department, Integer> {
+    String SUMMARY_SELECT = "select new com.example.hcm25_cpl_ks_java_01_lms.department.DepartmentSummary(" +
+            "d.id, d.name, l.name, d.userCount, d.courseCount) " +
+            "from Department d left join d.location l ";
+    // Thành viên của department được đọc theo trang trực tiếp từ bảng nối, không nạp cả collection
+    String MEMBER_SUMMARY = "com.example.hcm25_cpl_ks_java_01_lms.department.DepartmentMemberSummary";
+
     Optional<Department> findById(Long id);
     Page<Department> findAll(Pageable pageable);
     Page<Department> findByNameContainingIgnoreCase(String name, Pageable pageable);
     Optional<Department> findByName(String name);
-}
\ No newline at end of file
+
+    Optional<Department> findByNormalizedName(String normalizedName);
+
+    @Query("select d.id from Department d where d.normalizedName = :normalizedName")
+    Optional<Long> findIdByNormalizedName(@Param("normalizedName") String normalizedName);
+    List<Department> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    List<Department> findByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(Long afterId, Long maxId, Pageable pageable);
+
+    @Query("select min(d.id), max(d.id) from Department d")
+    List<Object[]> findIdRange();
+
+    // Id lớn nhất của mỗi nhóm khi chia các dòng (theo id) thành :buckets nhóm có số dòng gần bằng nhau
+    @Query(value = "select max(t.id) from (select id, ntile(:buckets) over (order by id) as bucket from department) t " +
+            "group by t.bucket order by t.bucket", nativeQuery = true)
+    List<Number> findIdQuantiles(@Param("buckets") int buckets);
+
+    // OFFSET cần thứ tự ổn định, nếu không các trang có thể lặp hoặc bỏ sót dòng
+    @Query(value = SUMMARY_SELECT + "order by d.id",
+            countQuery = "select count(d) from Department d")
+    Page<DepartmentSummary> findSummaries(Pageable pageable);
+
+    @Query(value = SUMMARY_SELECT + "where lower(d.name) like lower(concat('%', :name, '%')) order by d.id",
+            countQuery = "select count(d) from Department d where lower(d.name) like lower(concat('%', :name, '%'))")
+    Page<DepartmentSummary> findSummariesByNameContainingIgnoreCase(@Param("name") String name, Pageable pageable);
+
+    @Query("select d.id, d.name from Department d where d.name in :names")
+    List<Object[]> findIdAndNameByNameIn(@Param("names") Collection<String> names);
+
+    @Query("select d.id, d.normalizedName from Department d where d.normalizedName in :names")
+    List<Object[]> findIdAndNormalizedNameByNormalizedNameIn(@Param("names") Collection<String> names);
+
+    @Query("select d.id, d.name from Department d where d.id in :ids")
+    List<Object[]> findIdAndNameByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "delete from department_users where department_id in (:ids)", nativeQuery = true)
+    int deleteUserLinksByDepartmentIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "delete from department_courses where department_id in (:ids)", nativeQuery = true)
+    int deleteCourseLinksByDepartmentIdIn(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Department d where d.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select d.id, d.name from Department d")
+    List<Object[]> findAllIdAndName();
+
+    @Query("select d.version from Department d where d.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    @Query("select new com.example.hcm25_cpl_ks_java_01_lms.department.DepartmentDetailResponse(" +
+            "d.id, d.name, l.id, l.name, d.userCount, d.courseCount) " +
+            "from Department d left join d.location l where d.id = :id")
+    Optional<DepartmentDetailResponse> findDetailById(@Param("id") Long id);
+
+    // Lọc theo số thành viên dùng cột đếm sẵn có index (user_count, course_count)
+    @Query(value = SUMMARY_SELECT + "where d.userCount >= :minUsers and d.courseCount >= :minCourses",
+            countQuery = "select count(d) from Department d where d.userCount >= :minUsers and d.courseCount >= :minCourses")
+    Page<DepartmentSummary> findSummariesByMinCounts(@Param("minUsers") long minUsers, @Param("minCourses") long minCourses,
+                                                     Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "where d.id in :ids")
+    List<DepartmentSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query(SUMMARY_SELECT + "order by d.id")
+    Slice<DepartmentSummary> findSummarySlice(Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "where d.id > :afterId order by d.id")
+    Slice<DepartmentSummary> findSummarySliceAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "where d.id < :beforeId order by d.id desc")
+    Slice<DepartmentSummary> findSummarySliceBefore(@Param("beforeId") Long beforeId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "where lower(d.name) like lower(concat('%', :name, '%')) order by d.id")
+    Slice<DepartmentSummary> findSummarySliceByNameContainingIgnoreCase(@Param("name") String name, Pageable pageable);
+
+    @Query(value = "select new " + MEMBER_SUMMARY + "(u.id, u.username, u.name) from Department d join d.users u " +
+            "where d.id = :id and (lower(u.username) like :pattern escape '\\' or lower(u.name) like :pattern escape '\\') order by u.username",
+            countQuery = "select count(u) from Department d join d.users u " +
+                    "where d.id = :id and (lower(u.username) like :pattern escape '\\' or lower(u.name) like :pattern escape '\\')")
+    Page<DepartmentMemberSummary> findUsers(@Param("id") Long id, @Param("pattern") String pattern, Pageable pageable);
+
+    @Query(value = "select new " + MEMBER_SUMMARY + "(c.id, c.name) from Department d join d.courses c " +
+            "where d.id = :id and lower(c.name) like :pattern escape '\\' order by c.name",
+            countQuery = "select count(c) from Department d join d.courses c where d.id = :id and lower(c.name) like :pattern escape '\\'")
+    Page<DepartmentMemberSummary> findCourses(@Param("id") Long id, @Param("pattern") String pattern, Pageable pageable);
+
+    @Query(value = "select new " + MEMBER_SUMMARY + "(u.id, u.username, u.name) from User u " +
+            "where (lower(u.username) like :pattern escape '\\' or lower(u.name) like :pattern escape '\\') " +
+            "and not exists (select 1 from Department d join d.users du where d.id = :id and du.id = u.id) order by u.username",
+            countQuery = "select count(u) from User u where (lower(u.username) like :pattern escape '\\' or lower(u.name) like :pattern escape '\\') " +
+                    "and not exists (select 1 from Department d join d.users du where d.id = :id and du.id = u.id)")
+    Page<DepartmentMemberSummary> findUserCandidates(@Param("id") Long id, @Param("pattern") String pattern, Pageable pageable);
+
+    @Query(value = "select new " + MEMBER_SUMMARY + "(c.id, c.name) from Course c where lower(c.name) like :pattern escape '\\' " +
+            "and not exists (select 1 from Department d join d.courses dc where d.id = :id and dc.id = c.id) order by c.name",
+            countQuery = "select count(c) from Course c where lower(c.name) like :pattern escape '\\' " +
+                    "and not exists (select 1 from Department d join d.courses dc where d.id = :id and dc.id = c.id)")
+    Page<DepartmentMemberSummary> findCourseCandidates(@Param("id") Long id, @Param("pattern") String pattern, Pageable pageable);
+}
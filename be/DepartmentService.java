@@ -3,127 +3,582 @@ package com.example.hcm25_cpl_ks_java_01_lms.department;
 import com.example.hcm25_cpl_ks_java_01_lms.course.Course;
 import com.example.hcm25_cpl_ks_java_01_lms.language.Language;
 import com.example.hcm25_cpl_ks_java_01_lms.location.Location;
-import com.example.hcm25_cpl_ks_java_01_lms.location.LocationRepository;
 import com.example.hcm25_cpl_ks_java_01_lms.user.User;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.PersistenceContext;
 import lombok.SneakyThrows;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 public class DepartmentService {
+    // Số dòng giữ trong bộ nhớ khi ghi Excel, các dòng cũ hơn được đẩy xuống file tạm
+    private static final int EXPORT_ROW_WINDOW = 100;
+    private static final int MAX_COLUMN_WIDTH = 255 * 256;
+    private static final String[] EXPORT_HEADERS =
+            {"ID", "Name", "Location", "Users Count", "Courses Count", "User Names", "Course Names"};
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int BULK_DELETE_CHUNK_SIZE = 1000;
+    private static final int MAX_MEMBER_PAGE_SIZE = 200;
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of("id", "name", "userCount", "courseCount");
+    private static final String NAME_INDEX = "ux_department_normalized_name";
+
     private final DepartmentRepository departmentRepository;
-    private final LocationRepository locationRepository;
+    private final DepartmentLocationRegistry locationRegistry;
+    private final DepartmentImportEngine departmentImportEngine;
+    private final DepartmentCache departmentCache;
+    private final DepartmentNameIndex departmentNameIndex;
+    private final DepartmentCountCache departmentCountCache;
+    private final DepartmentMetrics departmentMetrics;
+    private final DepartmentMembershipService departmentMembershipService;
+    private final DepartmentProjectionQuery departmentProjectionQuery;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    public DepartmentService(DepartmentRepository departmentRepository, LocationRepository locationRepository) {
+    public DepartmentService(DepartmentRepository departmentRepository, DepartmentLocationRegistry locationRegistry,
+                             DepartmentImportEngine departmentImportEngine, DepartmentCache departmentCache,
+                             DepartmentNameIndex departmentNameIndex, DepartmentCountCache departmentCountCache,
+                             DepartmentMetrics departmentMetrics, DepartmentMembershipService departmentMembershipService,
+                             DepartmentProjectionQuery departmentProjectionQuery, ApplicationEventPublisher eventPublisher) {
         this.departmentRepository = departmentRepository;
-        this.locationRepository = locationRepository;
+        this.locationRegistry = locationRegistry;
+        this.departmentImportEngine = departmentImportEngine;
+        this.departmentCache = departmentCache;
+        this.departmentNameIndex = departmentNameIndex;
+        this.departmentCountCache = departmentCountCache;
+        this.departmentMetrics = departmentMetrics;
+        this.departmentMembershipService = departmentMembershipService;
+        this.departmentProjectionQuery = departmentProjectionQuery;
+        this.eventPublisher = eventPublisher;
     }
 
-    public Page<Department> getDepartments(String searchTerm, int page, int size) {
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "list"})
+    public Page<DepartmentSummary> getDepartments(String searchTerm, int page, int size) {
         if (page < 0 || size <= 0) {
             throw new IllegalArgumentException("Invalid page or size parameters");
         }
         Pageable pageable = PageRequest.of(page, size);
-        return searchTerm != null && !searchTerm.trim().isEmpty() ?
-                departmentRepository.findByNameContainingIgnoreCase(searchTerm.trim(), pageable) :
-                departmentRepository.findAll(pageable);
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            return departmentRepository.findSummaries(pageable);
+        }
+        if (!departmentNameIndex.isReady()) {
+            return departmentRepository.findSummariesByNameContainingIgnoreCase(searchTerm.trim(), pageable);
+        }
+        return searchDepartments(searchTerm, pageable);
+    }
+
+    /**
+     * Departments with at least {@code minUsers} users and {@code minCourses} courses, optionally sorted
+     * by {@code id}, {@code name}, {@code userCount} or {@code courseCount} ({@code "userCount,desc"}).
+     * Both the filter and the sort read the indexed counter columns.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "list"})
+    public Page<DepartmentSummary> getDepartmentsByMemberCount(long minUsers, long minCourses, String sort, int page, int size) {
+        if (page < 0 || size <= 0 || minUsers < 0 || minCourses < 0) {
+            throw new IllegalArgumentException("Invalid page, size or count parameters");
+        }
+        return departmentRepository.findSummariesByMinCounts(minUsers, minCourses, PageRequest.of(page, size, parseSort(sort)));
     }
 
+    /**
+     * Checks the parameters of an API listing request without running it, so a conditional
+     * request is only answered with 304 when the same request would have succeeded.
+     */
+    public void validateListRequest(int page, int size, String fields, Long minUsers, Long minCourses, String sort) {
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("Invalid page or size parameters");
+        }
+        if (minUsers != null || minCourses != null || sort != null) {
+            if ((minUsers != null && minUsers < 0) || (minCourses != null && minCourses < 0)) {
+                throw new IllegalArgumentException("Invalid page, size or count parameters");
+            }
+            parseSort(sort);
+        } else {
+            validateFields(fields);
+        }
+    }
+
+    public void validateFields(String fields) {
+        if (fields != null) {
+            departmentProjectionQuery.parseFields(fields);
+        }
+    }
+
+    private static Sort parseSort(String sort) {
+        if (sort == null || sort.trim().isEmpty()) {
+            return Sort.by("id");
+        }
+        String[] parts = sort.split(",");
+        String property = parts[0].trim();
+        if (!SORTABLE_PROPERTIES.contains(property)) {
+            throw new IllegalArgumentException("Cannot sort by '" + property + "'");
+        }
+        Sort.Direction direction = parts.length > 1 && parts[1].trim().equalsIgnoreCase("desc")
+                ? Sort.Direction.DESC : Sort.Direction.ASC;
+        return Sort.by(direction, property).and(Sort.by("id"));
+    }
+
+    /**
+     * Count-free listing: returns one page plus a "has next" flag, without the
+     * {@code COUNT(*)} a {@link Page} needs. When {@code afterId} (next page) or {@code beforeId}
+     * (previous page) is given and there is no search term, the page is read with a keyset seek
+     * on id instead of an offset. Ranked searches still page by offset.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "list"})
+    public Slice<DepartmentSummary> getDepartmentSlice(String searchTerm, Long afterId, Long beforeId, int page, int size) {
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("Invalid page or size parameters");
+        }
+        Pageable pageable = PageRequest.of(page, size);
+        if (searchTerm != null && !searchTerm.trim().isEmpty()) {
+            if (!departmentNameIndex.isReady()) {
+                return departmentRepository.findSummarySliceByNameContainingIgnoreCase(searchTerm.trim(), pageable);
+            }
+            Page<DepartmentSummary> result = searchDepartments(searchTerm, pageable);
+            return new SliceImpl<>(result.getContent(), pageable, result.hasNext());
+        }
+        if (afterId != null) {
+            Slice<DepartmentSummary> result = departmentRepository.findSummarySliceAfter(afterId, PageRequest.of(0, size));
+            return new SliceImpl<>(result.getContent(), pageable, result.hasNext());
+        }
+        if (beforeId != null) {
+            // Đọc ngược (id < beforeId, giảm dần) rồi đảo lại; trang sau luôn tồn tại vì vừa đi từ đó
+            Slice<DepartmentSummary> result = departmentRepository.findSummarySliceBefore(beforeId, PageRequest.of(0, size));
+            if (result.hasContent()) {
+                List<DepartmentSummary> content = new ArrayList<>(result.getContent());
+                Collections.reverse(content);
+                Pageable previous = result.hasNext() ? PageRequest.of(Math.max(page, 1), size) : PageRequest.of(0, size);
+                return new SliceImpl<>(content, previous, true);
+            }
+            pageable = PageRequest.of(0, size);
+        }
+        return departmentRepository.findSummarySlice(pageable);
+    }
+
+    /**
+     * Total number of departments as of the last background recount, or -1 if not counted yet.
+     */
+    public long getApproximateDepartmentCount() {
+        return departmentCountCache.getApproximateCount();
+    }
+
+    /**
+     * Ranked, accent-insensitive name search served by {@link DepartmentNameIndex};
+     * only the requested page of summaries is read from the database.
+     */
+    public Page<DepartmentSummary> searchDepartments(String searchTerm, Pageable pageable) {
+        List<Long> ids = departmentNameIndex.search(searchTerm);
+        int from = (int) Math.min(pageable.getOffset(), ids.size());
+        List<Long> pageIds = ids.subList(from, Math.min(from + pageable.getPageSize(), ids.size()));
+        if (pageIds.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, ids.size());
+        }
+
+        Map<Long, DepartmentSummary> byId = new HashMap<>();
+        for (DepartmentSummary summary : departmentRepository.findSummariesByIdIn(pageIds)) {
+            byId.put(summary.getId(), summary);
+        }
+        List<DepartmentSummary> content = new ArrayList<>(pageIds.size());
+        for (Long id : pageIds) {
+            if (byId.containsKey(id)) {
+                content.add(byId.get(id));
+            }
+        }
+        return new PageImpl<>(content, pageable, ids.size());
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "create"})
     @SneakyThrows
     @Transactional
     public Department createDepartment(Department department) {
         validateDepartment(department);
-        if (departmentRepository.findByName(department.getName()).isPresent()) {
-            throw new DepartmentAlreadyExistsException("Department with name '" + department.getName() + "' already exists");
-        }
         if (department.getLocation() != null && department.getLocation().getId() == null) {
             Location savedLocation = saveOrGetLocation(department.getLocation());
             department.setLocation(savedLocation);
         }
-        return departmentRepository.save(department);
+        department.setUserCount(department.getUsers() != null ? department.getUsers().size() : 0);
+        department.setCourseCount(department.getCourses() != null ? department.getCourses().size() : 0);
+        // Không kiểm tra trước: unique index trên normalized_name quyết định, lỗi trùng được đổi thành exception
+        Department saved = saveAndFlush(department);
+        eventPublisher.publishEvent(DepartmentChangedEvent.of(DepartmentChangedEvent.Type.CREATED, saved.getId(), saved.getName()));
+        return saved;
     }
 
+    /**
+     * Copies name and location of {@code departmentDetails} onto department {@code departmentDetails.id}.
+     * Users and courses are replaced only when the list is given; {@code null} leaves them unchanged.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "update"})
     @SneakyThrows
     @Transactional
     public Department updateDepartment(Department departmentDetails) {
         validateDepartment(departmentDetails);
-        Department existing = getDepartmentById(departmentDetails.getId());
-        Optional<Department> byName = departmentRepository.findByName(departmentDetails.getName());
-        if (byName.isPresent() && !byName.get().getId().equals(departmentDetails.getId())) {
-            throw new DepartmentAlreadyExistsException("Department with name '" + departmentDetails.getName() + "' already exists");
+        Department department = getDepartmentById(departmentDetails.getId());
+        String previousName = department.getName();
+        Location location = departmentDetails.getLocation();
+        if (location != null && location.getId() == null) {
+            location = saveOrGetLocation(location);
         }
-        if (departmentDetails.getLocation() != null && departmentDetails.getLocation().getId() == null) {
-            Location savedLocation = saveOrGetLocation(departmentDetails.getLocation());
-            departmentDetails.setLocation(savedLocation);
+        // Chỉ chép các trường đơn lên entity đang quản lý; users/courses được cập nhật theo diff
+        // để Hibernate không xóa rồi chèn lại toàn bộ bag
+        department.setName(departmentDetails.getName());
+        department.setLocation(location);
+        saveAndFlush(department);
+        // users/courses bằng null nghĩa là không đổi (form sửa cập nhật thành viên qua API riêng),
+        // danh sách rỗng nghĩa là xóa hết thành viên
+        departmentMembershipService.replaceMembers(department.getId(),
+                idsOf(departmentDetails.getUsers(), User::getId), idsOf(departmentDetails.getCourses(), Course::getId));
+        eventPublisher.publishEvent(DepartmentChangedEvent.of(DepartmentChangedEvent.Type.UPDATED, department.getId(),
+                previousName, department.getName()));
+        return department;
+    }
+
+    /**
+     * Writes the department immediately so that a clash on the normalized-name unique index
+     * surfaces here, as {@link DepartmentAlreadyExistsException}, instead of at commit.
+     */
+    private Department saveAndFlush(Department department) {
+        try {
+            return departmentRepository.saveAndFlush(department);
+        } catch (DataIntegrityViolationException e) {
+            if (isNameConflict(e)) {
+                throw new DepartmentAlreadyExistsException("Department with name '" + department.getName() + "' already exists");
+            }
+            // Có thể là location đã bị xóa nhưng id vẫn nằm trong registry
+            if (department.getLocation() != null && department.getLocation().getId() != null) {
+                locationRegistry.evict(List.of(department.getLocation().getId()));
+            }
+            throw e;
+        }
+    }
+
+    static boolean isNameConflict(DataIntegrityViolationException e) {
+        if (e instanceof DuplicateKeyException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                String constraintName = ((ConstraintViolationException) cause).getConstraintName();
+                if (constraintName != null && constraintName.toLowerCase(Locale.ROOT).contains(NAME_INDEX)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static <T> List<Long> idsOf(List<T> members, Function<T, Long> id) {
+        if (members == null) {
+            return null;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (T member : members) {
+            if (member != null && id.apply(member) != null) {
+                ids.add(id.apply(member));
+            }
         }
-        return departmentRepository.save(departmentDetails);
+        return ids;
     }
 
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "delete"})
     @Transactional
     public void deleteDepartment(Long id) {
         Department department = getDepartmentById(id);
         departmentRepository.delete(department);
+        eventPublisher.publishEvent(DepartmentChangedEvent.of(DepartmentChangedEvent.Type.DELETED, id, department.getName()));
+    }
+
+    /**
+     * Deletes many departments with set-based statements: join rows first, then the
+     * departments themselves, {@value #BULK_DELETE_CHUNK_SIZE} ids at a time.
+     * Ids that do not exist are reported instead of failing the batch.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "delete"})
+    @Transactional
+    public DepartmentBulkDeleteResult deleteDepartments(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("No departments selected for deletion");
+        }
+        Set<Long> requested = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id != null) {
+                requested.add(id);
+            }
+        }
+
+        Map<Long, String> deleted = new LinkedHashMap<>();
+        List<Long> requestedList = new ArrayList<>(requested);
+        for (int from = 0; from < requestedList.size(); from += BULK_DELETE_CHUNK_SIZE) {
+            List<Long> chunk = requestedList.subList(from, Math.min(from + BULK_DELETE_CHUNK_SIZE, requestedList.size()));
+            List<Long> existingIds = new ArrayList<>();
+            for (Object[] row : departmentRepository.findIdAndNameByIdIn(chunk)) {
+                existingIds.add((Long) row[0]);
+                deleted.put((Long) row[0], (String) row[1]);
+            }
+            if (existingIds.isEmpty()) {
+                continue;
+            }
+            departmentRepository.deleteUserLinksByDepartmentIdIn(existingIds);
+            departmentRepository.deleteCourseLinksByDepartmentIdIn(existingIds);
+            departmentRepository.deleteByIdIn(existingIds);
+        }
+
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : requested) {
+            if (!deleted.containsKey(id)) {
+                missingIds.add(id);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            eventPublisher.publishEvent(new DepartmentChangedEvent(
+                    DepartmentChangedEvent.Type.DELETED, deleted.keySet(), deleted.values()));
+        }
+        return new DepartmentBulkDeleteResult(deleted.size(), missingIds);
     }
 
+    /**
+     * Loads the department through the persistence context, so repeated reads are
+     * served by the second-level cache.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "get"})
     public Department getDepartmentById(Long id) {
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("Invalid department ID");
         }
-        return departmentRepository.findById(id)
+        Department department = entityManager.find(Department.class, id);
+        if (department == null) {
+            throw new EntityNotFoundException("Department not found with id: " + id);
+        }
+        return department;
+    }
+
+    /**
+     * Row version of the department, bumped by every write to it (entity, JDBC and membership updates).
+     */
+    public long getDepartmentVersion(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("Invalid department ID");
+        }
+        return departmentRepository.findVersionById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Department not found with id: " + id));
     }
 
+    public DepartmentDetailResponse getDepartmentDetail(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("Invalid department ID");
+        }
+        return departmentRepository.findDetailById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Department not found with id: " + id));
+    }
+
+    /**
+     * Listing that reads only the requested {@code fields} (see {@link DepartmentProjectionQuery}).
+     * Searches are ranked by the name index when it is ready, like {@link #getDepartments}.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "list"})
+    public Page<Map<String, Object>> getDepartmentFields(String searchTerm, String fields, int page, int size) {
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("Invalid page or size parameters");
+        }
+        List<String> selected = departmentProjectionQuery.parseFields(fields);
+        Pageable pageable = PageRequest.of(page, size);
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            return departmentProjectionQuery.findPage(selected, null, pageable);
+        }
+        if (!departmentNameIndex.isReady()) {
+            return departmentProjectionQuery.findPage(selected, searchTerm.trim(), pageable);
+        }
+        List<Long> ids = departmentNameIndex.search(searchTerm);
+        int from = (int) Math.min(pageable.getOffset(), ids.size());
+        List<Long> pageIds = ids.subList(from, Math.min(from + pageable.getPageSize(), ids.size()));
+        List<Map<String, Object>> content = pageIds.isEmpty() ? List.of() : departmentProjectionQuery.findByIds(selected, pageIds);
+        return new PageImpl<>(content, pageable, ids.size());
+    }
+
+    public Map<String, Object> getDepartmentFields(Long id, String fields) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("Invalid department ID");
+        }
+        List<Map<String, Object>> rows = departmentProjectionQuery.findByIds(departmentProjectionQuery.parseFields(fields), List.of(id));
+        if (rows.isEmpty()) {
+            throw new EntityNotFoundException("Department not found with id: " + id);
+        }
+        return rows.get(0);
+    }
+
+    public DepartmentSummary getDepartmentSummary(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("Invalid department ID");
+        }
+        List<DepartmentSummary> summaries = departmentRepository.findSummariesByIdIn(List.of(id));
+        if (summaries.isEmpty()) {
+            throw new EntityNotFoundException("Department not found with id: " + id);
+        }
+        return summaries.get(0);
+    }
+
+    /**
+     * One page of the users of a department, optionally filtered by username or name,
+     * read from {@code department_users} without initializing {@link Department#getUsers()}.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "members"})
+    public Page<DepartmentMemberSummary> getDepartmentUsers(Long id, String query, int page, int size) {
+        return departmentRepository.findUsers(id, likePattern(query), memberPage(page, size));
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "members"})
+    public Page<DepartmentMemberSummary> getDepartmentCourses(Long id, String query, int page, int size) {
+        return departmentRepository.findCourses(id, likePattern(query), memberPage(page, size));
+    }
+
+    /**
+     * Users that are not yet members of the department, for the "add user" search of the edit view.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "members"})
+    public Page<DepartmentMemberSummary> getUserCandidates(Long id, String query, int page, int size) {
+        return departmentRepository.findUserCandidates(id, likePattern(query), memberPage(page, size));
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "members"})
+    public Page<DepartmentMemberSummary> getCourseCandidates(Long id, String query, int page, int size) {
+        return departmentRepository.findCourseCandidates(id, likePattern(query), memberPage(page, size));
+    }
+
+    private static Pageable memberPage(int page, int size) {
+        if (page < 0 || size <= 0 || size > MAX_MEMBER_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid page or size parameters");
+        }
+        return PageRequest.of(page, size);
+    }
+
+    private static String likePattern(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return "%";
+        }
+        // Escape ký tự đại diện của LIKE (các query dùng escape '\') để từ khóa được so khớp nguyên văn
+        String term = query.trim().toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + term + "%";
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "export"})
     public ByteArrayInputStream exportDepartmentsToExcel(List<Department> departments) throws IOException {
         if (departments == null) {
             throw new IllegalArgumentException("Departments list cannot be null");
         }
-        return generateExcel(departments);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeExcel(departments, out);
+        return new ByteArrayInputStream(out.toByteArray());
     }
 
-    private ByteArrayInputStream generateExcel(List<Department> departments) throws IOException {
-        try (Workbook workbook = new XSSFWorkbook();
-             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-
-            Sheet sheet = workbook.createSheet("Departments");
-            createHeaderRow(workbook, sheet);
+    /**
+     * Streams the departments as an .xlsx workbook straight into {@code out}.
+     * Only {@value #EXPORT_ROW_WINDOW} rows are kept in memory at a time, so the
+     * heap usage does not grow with the number of departments.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "export"})
+    public void exportDepartmentsToExcel(Iterable<Department> departments, OutputStream out) throws IOException {
+        if (departments == null) {
+            throw new IllegalArgumentException("Departments list cannot be null");
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream cannot be null");
+        }
+        writeExcel(departments, out);
+    }
 
-            int rowIdx = 1;
-            for (Department department : departments) {
-                Row row = sheet.createRow(rowIdx++);
-                populateRow(row, department);
-            }
+    /**
+     * Exports every department, reading them chunk by chunk through {@link #streamAllDepartments(int)}.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "export"})
+    @Transactional(readOnly = true)
+    public void exportAllDepartmentsToExcel(OutputStream out) throws IOException {
+        try (Stream<Department> departments = streamAllDepartments(DEFAULT_CHUNK_SIZE)) {
+            exportDepartmentsToExcel(departments::iterator, out);
+        }
+    }
 
-            for (int i = 0; i < 6; i++) {
-                sheet.autoSizeColumn(i);
+    private void writeExcel(Iterable<Department> departments, OutputStream out) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(EXPORT_ROW_WINDOW)) {
+            workbook.setCompressTempFiles(true);
+            try {
+                Sheet sheet = workbook.createSheet("Departments");
+                int[] columnWidths = new int[EXPORT_HEADERS.length];
+                createHeaderRow(workbook, sheet, columnWidths);
+
+                int rowIdx = 1;
+                for (Department department : departments) {
+                    Row row = sheet.createRow(rowIdx++);
+                    populateRow(row, department, columnWidths);
+                    departmentMetrics.recordMembership(department.getUserCount(), department.getCourseCount());
+                }
+
+                // Độ rộng cột được ước lượng trong lúc ghi, không cần autoSizeColumn quét lại toàn bộ dòng
+                for (int i = 0; i < columnWidths.length; i++) {
+                    sheet.setColumnWidth(i, Math.min((columnWidths[i] + 2) * 256, MAX_COLUMN_WIDTH));
+                }
+
+                DepartmentMetrics.CountingOutputStream counted = departmentMetrics.countBytes(out);
+                workbook.write(counted);
+                counted.flush();
+                departmentMetrics.recordExport("xlsx", rowIdx - 1, counted.getCount());
+            } finally {
+                workbook.dispose();
             }
-
-            workbook.write(out);
-            return new ByteArrayInputStream(out.toByteArray());
         }
     }
 
-    private void createHeaderRow(Workbook workbook, Sheet sheet) {
+    private void createHeaderRow(Workbook workbook, Sheet sheet, int[] columnWidths) {
         Row headerRow = sheet.createRow(0);
         CellStyle headerStyle = createHeaderStyle(workbook);
-        String[] headers = {"ID", "Name", "Location", "Users Count", "Courses Count", "User Names", "Course Names"};
-        for (int col = 0; col < headers.length; col++) {
-            Cell cell = headerRow.createCell(col);
-            cell.setCellValue(headers[col]);
+        for (int col = 0; col < EXPORT_HEADERS.length; col++) {
+            Cell cell = setCellValue(headerRow, col, EXPORT_HEADERS[col], columnWidths);
             cell.setCellStyle(headerStyle);
         }
     }
@@ -138,50 +593,88 @@ public class DepartmentService {
         return style;
     }
 
-    private void populateRow(Row row, Department department) {
-        row.createCell(0).setCellValue(department.getId());
-        row.createCell(1).setCellValue(department.getName());
-        row.createCell(2).setCellValue(department.getLocation() != null ? department.getLocation().getName() : "N/A");
-        row.createCell(3).setCellValue(department.getUsers() != null ? department.getUsers().size() : 0);
-        row.createCell(4).setCellValue(department.getCourses() != null ? department.getCourses().size() : 0);
-        row.createCell(5).setCellValue(department.getUsers() != null ?
-                department.getUsers().stream().map(User::getUsername).collect(Collectors.joining(",")) :"N/A");
-        row.createCell(6).setCellValue(department.getCourses() != null ?
-                department.getCourses().stream().map(Course::getName).collect(Collectors.joining(", ")) : "N/A");
+    private void populateRow(Row row, Department department, int[] columnWidths) {
+        setCellValue(row, 0, department.getId(), columnWidths);
+        setCellValue(row, 1, department.getName(), columnWidths);
+        setCellValue(row, 2, department.getLocation() != null ? department.getLocation().getName() : "N/A", columnWidths);
+        // Số thành viên lấy từ cột user_count/course_count, không khởi tạo collection chỉ để đếm
+        setCellValue(row, 3, department.getUserCount(), columnWidths);
+        setCellValue(row, 4, department.getCourseCount(), columnWidths);
+        setCellValue(row, 5, department.getUsers() != null ?
+                department.getUsers().stream().map(User::getUsername).collect(Collectors.joining(",")) : "N/A", columnWidths);
+        setCellValue(row, 6, department.getCourses() != null ?
+                department.getCourses().stream().map(Course::getName).collect(Collectors.joining(", ")) : "N/A", columnWidths);
+    }
+
+    private Cell setCellValue(Row row, int col, String value, int[] columnWidths) {
+        Cell cell = row.createCell(col);
+        cell.setCellValue(value);
+        if (value != null) {
+            columnWidths[col] = Math.max(columnWidths[col], value.length());
+        }
+        return cell;
+    }
+
+    private Cell setCellValue(Row row, int col, Number value, int[] columnWidths) {
+        Cell cell = row.createCell(col);
+        if (value != null) {
+            cell.setCellValue(value.doubleValue());
+            columnWidths[col] = Math.max(columnWidths[col], value.toString().length());
+        }
+        return cell;
     }
 
+    /**
+     * Imports departments in batches through {@link DepartmentImportEngine}: existing
+     * departments (matched by name) get their location updated, the others are inserted.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "import"})
     @Transactional
-    public List<Department> saveAllFromExcel(List<Department> departments) {
+    public DepartmentImportResult saveAllFromExcel(List<Department> departments) {
         if (departments == null || departments.isEmpty()) {
             throw new IllegalArgumentException("Departments list cannot be null or empty");
         }
 
         for (Department dept : departments) {
             validateDepartment(dept);
-            Optional<Department> existing = departmentRepository.findByName(dept.getName());
-            if (existing.isPresent()) {
-                dept.setId(existing.get().getId());
-            }
-            if (dept.getLocation() != null) {
-                Location savedLocation = saveOrGetLocation(dept.getLocation());
-                dept.setLocation(savedLocation);
-            }
         }
-        return departmentRepository.saveAll(departments);
+        DepartmentImportResult result = null;
+        departmentMetrics.importStarted();
+        try {
+            result = departmentImportEngine.importDepartments(departments);
+            return result;
+        } finally {
+            departmentMetrics.importFinished(result);
+        }
+    }
+
+    /**
+     * Streaming variant of {@link #saveAllFromExcel(List)}: rows are parsed and written
+     * chunk by chunk, without materializing the whole file.
+     */
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "import"})
+    @Transactional
+    public DepartmentImportResult importFromExcel(InputStream inputStream) throws IOException {
+        DepartmentImportResult result = null;
+        departmentMetrics.importStarted();
+        try {
+            result = departmentImportEngine.importExcel(inputStream);
+        } finally {
+            departmentMetrics.importFinished(result);
+        }
+        if (result.getRowsProcessed() == 0) {
+            throw new IllegalArgumentException("Departments list cannot be null or empty");
+        }
+        return result;
     }
 
     private Location saveOrGetLocation(Location location) {
         if (location == null || location.getName() == null || location.getName().trim().isEmpty()) {
             return null;
         }
-        Optional<Location> existingLocation = locationRepository.findByName(location.getName());
-        if (existingLocation.isPresent()) {
-            return existingLocation.get();
-        }
-        if (location.getAddress() == null) {
-            location.setAddress("N/A"); // Default address if not provided
-        }
-        return locationRepository.save(location);
+        // Id lấy từ registry, entity chỉ là reference nên không cần select location
+        Long id = locationRegistry.resolveOrCreate(location.getName(), location.getAddress());
+        return entityManager.getReference(Location.class, id);
     }
 
     private void validateDepartment(Department department) {
@@ -197,12 +690,27 @@ public class DepartmentService {
     }
 
     public Department getDepartmentByName(String name) {
-        return departmentRepository.findByName(name)
+        Long id = findIdByName(name)
                 .orElseThrow(() -> new IllegalArgumentException("Department with name " + name + " not found"));
+        Department department = entityManager.find(Department.class, id);
+        if (department == null || !Department.normalizeName(department.getName()).equals(Department.normalizeName(name))) {
+            departmentCache.evictName(name);
+            return departmentRepository.findByNormalizedName(Department.normalizeName(name))
+                    .orElseThrow(() -> new IllegalArgumentException("Department with name " + name + " not found"));
+        }
+        return department;
     }
 
     public boolean existsByName(String name) {
-        return departmentRepository.findByName(name).isPresent();
+        return findIdByName(name).isPresent();
+    }
+
+    private Optional<Long> findIdByName(String name) {
+        return departmentCache.findIdByName(name, departmentRepository::findIdByNormalizedName);
+    }
+
+    public Map<String, Object> getCacheStatistics() {
+        return departmentCache.getStatistics();
     }
 
     private ByteArrayInputStream generateExcelTemplate() throws IOException {
@@ -242,6 +750,35 @@ public class DepartmentService {
         return departmentRepository.findAll(pageable);
     }
 
+    /**
+     * Iterates all departments in id order using keyset pagination ({@code id > lastId}),
+     * clearing the persistence context between chunks so memory stays flat.
+     * The stream is lazy: consume it inside a read-only transaction or an open session,
+     * and do not rely on entities from earlier chunks staying managed.
+     */
+    public Stream<Department> streamAllDepartments(int chunkSize) {
+        DepartmentCursor cursor = new DepartmentCursor(departmentRepository, entityManager, chunkSize);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Same as {@link #streamAllDepartments(int)}, restricted to ids in {@code (afterId, maxId]}.
+     */
+    public Stream<Department> streamDepartmentsInRange(long afterId, long maxId, int chunkSize) {
+        DepartmentCursor cursor = new DepartmentCursor(departmentRepository, entityManager, chunkSize, afterId, maxId);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Lazily iterates the summaries of all departments in id order, {@code chunkSize} rows per
+     * query. Safe to consume outside a transaction, e.g. while a view is being rendered.
+     */
+    public Iterator<DepartmentSummary> iterateDepartmentSummaries(int chunkSize) {
+        return new DepartmentSummaryCursor(departmentRepository, chunkSize);
+    }
+
     public long countAllDepartments() {
         return departmentRepository.count(); // Đếm tổng số dữ liệu
     }
@@ -0,0 +1,23 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Count-free page of departments. {@code nextAfterId} can be passed back as {@code afterId}
+ * and {@code prevBeforeId} as {@code beforeId} to seek the next or previous page by id
+ * instead of using an offset.
+ */
+@AllArgsConstructor
+@Getter
+public class DepartmentSliceResponse {
+    private final List<DepartmentSummary> content;
+    private final int page;
+    private final int size;
+    private final boolean hasNext;
+    private final Long nextAfterId;
+    private final Long prevBeforeId;
+    private final long approximateTotal;
+}
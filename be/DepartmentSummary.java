@@ -0,0 +1,22 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Lightweight read model for department listings. User and course counts come from
+ * the denormalized counter columns of {@link Department}, so no collection is initialized.
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class DepartmentSummary {
+    private Long id;
+    private String name;
+    private String locationName;
+    private Long userCount;
+    private Long courseCount;
+}
@@ -0,0 +1,55 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Keyset iterator over {@link DepartmentSummary} rows ordered by id, one
+ * {@code id > lastId} query per chunk. Summaries are DTOs carrying the stored member counts,
+ * so nothing is added to a persistence context and no transaction has to stay open
+ * between chunks; only the current chunk is held in memory.
+ */
+class DepartmentSummaryCursor implements Iterator<DepartmentSummary> {
+    private final DepartmentRepository departmentRepository;
+    private final int chunkSize;
+
+    private Iterator<DepartmentSummary> current = Collections.emptyIterator();
+    private Long lastId = 0L;
+    private boolean exhausted;
+
+    DepartmentSummaryCursor(DepartmentRepository departmentRepository, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.departmentRepository = departmentRepository;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !exhausted) {
+            fetchNextChunk();
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public DepartmentSummary next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DepartmentSummary summary = current.next();
+        lastId = summary.getId();
+        return summary;
+    }
+
+    private void fetchNextChunk() {
+        Slice<DepartmentSummary> chunk = departmentRepository.findSummarySliceAfter(lastId, PageRequest.of(0, chunkSize));
+        exhausted = !chunk.hasNext();
+        current = chunk.getContent().iterator();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.example.hcm25_cpl_ks_java_01_lms.course.Course;
+import com.example.hcm25_cpl_ks_java_01_lms.user.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Streams departments as CSV or newline-delimited JSON straight from the keyset cursor,
+ * one row at a time, with the same columns as the Excel export.
+ */
+@Component
+public class DepartmentTextExporter {
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final String[] CSV_HEADERS =
+            {"ID", "Name", "Location", "Users Count", "Courses Count", "User Names", "Course Names"};
+
+    private final DepartmentService departmentService;
+    private final DepartmentMetrics departmentMetrics;
+    private final ObjectMapper objectMapper;
+
+    public DepartmentTextExporter(DepartmentService departmentService, DepartmentMetrics departmentMetrics,
+                                  ObjectMapper objectMapper) {
+        this.departmentService = departmentService;
+        this.departmentMetrics = departmentMetrics;
+        this.objectMapper = objectMapper;
+    }
+
+    @Timed(value = DepartmentMetrics.OPERATION_TIMER, extraTags = {"operation", "export"})
+    @Transactional(readOnly = true)
+    public void export(Format format, OutputStream out) throws IOException {
+        DepartmentMetrics.CountingOutputStream counted = departmentMetrics.countBytes(out);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(counted, StandardCharsets.UTF_8));
+        long rows;
+        try (Stream<Department> departments = departmentService.streamAllDepartments(DepartmentService.DEFAULT_CHUNK_SIZE)) {
+            rows = format == Format.CSV
+                    ? writeCsv(departments.iterator(), writer)
+                    : writeNdjson(departments.iterator(), writer);
+        }
+        writer.flush();
+        departmentMetrics.recordExport(format.getExtension(), rows, counted.getCount());
+    }
+
+    private long writeCsv(Iterator<Department> departments, Writer writer) throws IOException {
+        writeCsvLine(writer, CSV_HEADERS);
+        long rows = 0;
+        while (departments.hasNext()) {
+            Department department = departments.next();
+            writeCsvLine(writer, new String[]{
+                    String.valueOf(department.getId()),
+                    department.getName(),
+                    locationName(department),
+                    String.valueOf(userCount(department)),
+                    String.valueOf(courseCount(department)),
+                    userNames(department),
+                    courseNames(department)});
+            rows++;
+        }
+        return rows;
+    }
+
+    private long writeNdjson(Iterator<Department> departments, Writer writer) throws IOException {
+        long rows = 0;
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        while (departments.hasNext()) {
+            Department department = departments.next();
+            generator.writeStartObject();
+            generator.writeNumberField("id", department.getId());
+            generator.writeStringField("name", department.getName());
+            generator.writeStringField("location", locationName(department));
+            generator.writeNumberField("userCount", userCount(department));
+            generator.writeNumberField("courseCount", courseCount(department));
+            generator.writeStringField("userNames", userNames(department));
+            generator.writeStringField("courseNames", courseNames(department));
+            generator.writeEndObject();
+            rows++;
+        }
+        if (rows > 0) {
+            generator.writeRaw('\n');
+        }
+        generator.flush();
+        return rows;
+    }
+
+    private static void writeCsvLine(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String locationName(Department department) {
+        return department.getLocation() != null ? department.getLocation().getName() : "N/A";
+    }
+
+    // Đọc cột user_count/course_count, không khởi tạo collection chỉ để đếm
+    private static long userCount(Department department) {
+        return department.getUserCount();
+    }
+
+    private static long courseCount(Department department) {
+        return department.getCourseCount();
+    }
+
+    private static String userNames(Department department) {
+        return department.getUsers() != null ?
+                department.getUsers().stream().map(User::getUsername).collect(Collectors.joining(",")) : "N/A";
+    }
+
+    private static String courseNames(Department department) {
+        return department.getCourses() != null ?
+                department.getCourses().stream().map(Course::getName).collect(Collectors.joining(", ")) : "N/A";
+    }
+}
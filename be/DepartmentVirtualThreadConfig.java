@@ -0,0 +1,36 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factories for the department export and import workers.
+ * Request threads are not configured here: Spring Boot runs Tomcat on virtual threads with
+ * {@code spring.threads.virtual.enabled=true} (Java 21+). The department workers follow that
+ * property unless {@code department.virtual-threads.enabled} is set explicitly; how much of
+ * their work runs at once is still decided by their pool sizes and {@link DepartmentWorkLimiter}.
+ */
+final class DepartmentVirtualThreadConfig {
+    static final String ENABLED = "${department.virtual-threads.enabled:${spring.threads.virtual.enabled:false}}";
+
+    private DepartmentVirtualThreadConfig() {
+    }
+
+    /**
+     * Daemon platform threads named {@code name-1}, {@code name-2}, ..., or virtual threads
+     * with the same names when {@code virtual} is set.
+     */
+    static ThreadFactory threadFactory(boolean virtual, String name) {
+        if (virtual) {
+            return new VirtualThreadTaskExecutor(name + "-").getVirtualThreadFactory();
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
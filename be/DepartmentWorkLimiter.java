@@ -0,0 +1,99 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission limit for exports and imports, the requests that hold a database connection
+ * for seconds or minutes. At most {@code department.heavy-work.max-concurrent} permits are
+ * handed out (keep it well below the connection pool size); a request that cannot get its
+ * permits within {@code department.heavy-work.acquire-timeout} fails with
+ * {@link DepartmentBusyException} instead of queueing, so list and detail requests always
+ * find a free connection.
+ */
+@Component
+public class DepartmentWorkLimiter {
+    private final Semaphore semaphore;
+    private final int maxConcurrent;
+    private final Duration acquireTimeout;
+    private final Counter rejected;
+
+    public DepartmentWorkLimiter(MeterRegistry registry,
+                                 @Value("${department.heavy-work.max-concurrent:4}") int maxConcurrent,
+                                 @Value("${department.heavy-work.acquire-timeout:PT2S}") Duration acquireTimeout) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("department.heavy-work.max-concurrent must be positive");
+        }
+        this.semaphore = new Semaphore(maxConcurrent, true);
+        this.maxConcurrent = maxConcurrent;
+        this.acquireTimeout = acquireTimeout;
+        Gauge.builder("department.heavy-work.active", semaphore, s -> maxConcurrent - s.availablePermits())
+                .description("Export/import permits currently held")
+                .register(registry);
+        this.rejected = Counter.builder("department.heavy-work.rejected")
+                .description("Exports/imports refused because all permits were taken")
+                .register(registry);
+    }
+
+    /**
+     * Takes one permit, waiting at most the configured timeout.
+     */
+    public Permit acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * Takes {@code weight} permits, e.g. one per worker of a parallel export. The weight is capped
+     * at the limit, so callers must size their work to {@link Permit#getPermits()}.
+     */
+    public Permit acquire(int weight) {
+        int permits = Math.max(1, Math.min(weight, maxConcurrent));
+        try {
+            if (!semaphore.tryAcquire(permits, acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new DepartmentBusyException("Too many exports/imports in progress, please retry later", acquireTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DepartmentBusyException("Interrupted while waiting for an export/import slot", acquireTimeout);
+        }
+        return new Permit(permits);
+    }
+
+    /**
+     * Waits as long as needed for one permit; used by background import jobs, which are
+     * already bounded by their own worker pool.
+     */
+    public Permit acquireUninterruptibly() {
+        semaphore.acquireUninterruptibly();
+        return new Permit(1);
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final int permits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int permits) {
+            this.permits = permits;
+        }
+
+        public int getPermits() {
+            return permits;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release(permits);
+            }
+        }
+    }
+}
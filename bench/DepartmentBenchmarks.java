@@ -0,0 +1,31 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the department benchmarks with the gc profiler, so every result carries
+ * ops/s, sampled latency percentiles (p99) and the allocation rate.
+ * An optional first argument filters benchmarks by regex, e.g. {@code DepartmentExcelBenchmark.export}.
+ * {@code loadtest.*} system properties are passed on to the forked benchmark JVMs.
+ */
+public class DepartmentBenchmarks {
+    public static void main(String[] args) throws RunnerException {
+        List<String> jvmArgs = new ArrayList<>();
+        System.getProperties().stringPropertyNames().stream()
+                .filter(name -> name.startsWith("loadtest."))
+                .forEach(name -> jvmArgs.add("-D" + name + "=" + System.getProperty(name)));
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "Department.*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend(jvmArgs.toArray(new String[0]))
+                .build();
+        new Runner(options).run();
+    }
+}
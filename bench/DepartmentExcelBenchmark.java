@@ -0,0 +1,114 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import com.example.hcm25_cpl_ks_java_01_lms.course.Course;
+import com.example.hcm25_cpl_ks_java_01_lms.location.Location;
+import com.example.hcm25_cpl_ks_java_01_lms.user.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import/export stages of the department Excel pipeline, without a database:
+ * writing a workbook (populateRow for every department) and parsing it back.
+ * Run through {@link DepartmentBenchmarks#main(String[])} to get the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class DepartmentExcelBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"0", "10", "100"})
+    private int fanOut;
+
+    private DepartmentService departmentService;
+    private List<Department> departments;
+    private byte[] workbook;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Export/import không dùng tới repository nên không cần Spring context
+        departmentService = new DepartmentService(null, null, null, null, null, null,
+                new DepartmentMetrics(new SimpleMeterRegistry()), null, null, null);
+        departments = generateDepartments(rows, fanOut);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        departmentService.exportDepartmentsToExcel(departments, out);
+        workbook = out.toByteArray();
+    }
+
+    @Benchmark
+    public void exportWorkbook(Blackhole blackhole) throws IOException {
+        departmentService.exportDepartmentsToExcel(departments, new BlackholeOutputStream(blackhole));
+    }
+
+    @Benchmark
+    public void importWorkbook(Blackhole blackhole) throws IOException {
+        DepartmentExcelImporter.importDepartments(new ByteArrayInputStream(workbook),
+                (department, rowNum) -> blackhole.consume(department));
+    }
+
+    static List<Department> generateDepartments(int rows, int fanOut) {
+        // Các department dùng chung một danh sách user/course để dữ liệu sinh ra không chiếm hết heap
+        List<User> users = new ArrayList<>();
+        List<Course> courses = new ArrayList<>();
+        for (int i = 0; i < fanOut; i++) {
+            User user = new User();
+            user.setUsername("user" + i);
+            users.add(user);
+            Course course = new Course();
+            course.setName("Course " + i);
+            courses.add(course);
+        }
+
+        List<Location> locations = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Location location = new Location();
+            location.setName("Location " + i);
+            locations.add(location);
+        }
+
+        List<Department> departments = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Department department = new Department();
+            department.setId((long) i + 1);
+            department.setName("Phòng ban số " + i);
+            department.setLocation(locations.get(i % locations.size()));
+            department.setUsers(users);
+            department.setCourses(courses);
+            departments.add(department);
+        }
+        return departments;
+    }
+
+    private static final class BlackholeOutputStream extends OutputStream {
+        private final Blackhole blackhole;
+
+        private BlackholeOutputStream(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(int b) {
+            blackhole.consume(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            blackhole.consume(len);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * saveAllFromExcel against an embedded H2 database: name/location resolution plus
+ * the batched inserts of {@link DepartmentImportEngine}. Every invocation starts from an
+ * empty department table, so each measurement is a full insert of {@code rows} departments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.SingleShotTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class DepartmentImportPersistenceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int rows;
+
+    private ConfigurableApplicationContext context;
+    private DepartmentService departmentService;
+    private JdbcTemplate jdbcTemplate;
+    private List<Department> departments;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:departments;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.open-in-view=false",
+                        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+                        "department.import.batch-size=500")
+                .run();
+        departmentService = context.getBean(DepartmentService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetData() {
+        jdbcTemplate.update("delete from department");
+        departments = DepartmentExcelBenchmark.generateDepartments(rows, 0);
+        departments.forEach(department -> department.setId(null));
+    }
+
+    @Benchmark
+    public DepartmentImportResult saveAllFromExcel() {
+        return departmentService.saveAllFromExcel(departments);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        SpringApplication.exit(context);
+    }
+
+    @SpringBootApplication
+    @ComponentScan(basePackageClasses = Department.class, excludeFilters = @ComponentScan.Filter(
+            type = FilterType.ANNOTATION, classes = {Controller.class, RestController.class}))
+    @EntityScan("com.example.hcm25_cpl_ks_java_01_lms")
+    @EnableJpaRepositories({"com.example.hcm25_cpl_ks_java_01_lms.department", "com.example.hcm25_cpl_ks_java_01_lms.location"})
+    static class BenchmarkApplication {
+    }
+}
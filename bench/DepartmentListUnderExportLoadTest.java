@@ -0,0 +1,84 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP load test against a running application: list requests sampled for latency while
+ * other threads keep full exports running. Start the application once with
+ * {@code spring.threads.virtual.enabled=false} and once with {@code true}, run
+ * {@code DepartmentBenchmarks DepartmentListUnderExportLoadTest} against each, and compare
+ * the p99 of {@code mixed:list} with {@code listOnly}. Exports that are turned away with 503 by
+ * {@link DepartmentWorkLimiter} are counted in {@code mixed:export} like any other response.
+ * <p>
+ * {@code -Dloadtest.base-url} (default {@code http://localhost:8080}) selects the server and
+ * {@code -Dloadtest.cookie} passes the session cookie of a logged-in user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 30)
+@Fork(1)
+public class DepartmentListUnderExportLoadTest {
+
+    private HttpClient client;
+    private URI listUri;
+    private URI exportUri;
+    private String cookie;
+
+    @Setup(Level.Trial)
+    public void createClient() {
+        String baseUrl = System.getProperty("loadtest.base-url", "http://localhost:8080");
+        cookie = System.getProperty("loadtest.cookie", "");
+        listUri = URI.create(baseUrl + "/api/departments?page=0&size=20");
+        exportUri = URI.create(baseUrl + "/api/departments/export?format=csv");
+        client = HttpClient.newBuilder()
+                .executor(Executors.newCachedThreadPool())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @Benchmark
+    @Group("listOnly")
+    @GroupThreads(32)
+    public int listAlone() throws IOException, InterruptedException {
+        return list();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(32)
+    public int list() throws IOException, InterruptedException {
+        return client.send(request(listUri), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public long export() throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(request(exportUri), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            // Đọc hết body để export giữ connection/thread phía server suốt thời gian ghi
+            return body.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private HttpRequest request(URI uri) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(5)).GET();
+        if (!cookie.isEmpty()) {
+            builder.header("Cookie", cookie);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Many threads creating departments at once against an embedded H2 database.
+ * {@code createDepartment} relies on the normalized-name unique index alone;
+ * {@code checkThenCreate} adds the old {@code existsByName} round trip in front of it for
+ * comparison. With {@code namePool > 0} the threads keep colliding on the same names (in
+ * different case and spacing); after every iteration the table is checked for duplicates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class DepartmentNameUniquenessBenchmark {
+
+    // 0: mọi tên đều khác nhau
+    @Param({"0", "50"})
+    private int namePool;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private DepartmentService departmentService;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(DepartmentImportPersistenceBenchmark.BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:departments;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+                        "spring.datasource.hikari.maximum-pool-size=16",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.open-in-view=false",
+                        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true")
+                .run();
+        departmentService = context.getBean(DepartmentService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetData() {
+        jdbcTemplate.update("delete from department");
+    }
+
+    @Benchmark
+    public boolean createDepartment() {
+        return create(nextName());
+    }
+
+    @Benchmark
+    public boolean checkThenCreate() {
+        String name = nextName();
+        return !departmentService.existsByName(name) && create(name);
+    }
+
+    @TearDown(Level.Iteration)
+    public void verifyUnique() {
+        List<String> duplicates = jdbcTemplate.queryForList("select lower(trim(name)) from department " +
+                "group by lower(trim(name)) having count(*) > 1", String.class);
+        if (!duplicates.isEmpty()) {
+            throw new IllegalStateException("Duplicate department names: " + duplicates);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        SpringApplication.exit(context);
+    }
+
+    private boolean create(String name) {
+        try {
+            departmentService.createDepartment(Department.builder().name(name).build());
+            return true;
+        } catch (DepartmentAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private String nextName() {
+        long n = sequence.incrementAndGet();
+        if (namePool == 0) {
+            return "Department " + n;
+        }
+        String name = "Department " + (n % namePool);
+        return ThreadLocalRandom.current().nextBoolean() ? " " + name.toUpperCase() : name;
+    }
+}
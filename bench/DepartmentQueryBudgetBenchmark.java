@@ -0,0 +1,80 @@
+package com.example.hcm25_cpl_ks_java_01_lms.department;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * List page and detail reads against an embedded H2 database with
+ * {@link DepartmentQueryCounter} enabled. Every invocation checks the number of statements
+ * Hibernate issued against a fixed budget and fails the run when it is exceeded, so an N+1
+ * regression (e.g. rendering {@code users.size()} per row again) shows up as an error rather
+ * than only as a slower score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class DepartmentQueryBudgetBenchmark {
+    // Một query lấy trang và một query count
+    private static final long LIST_BUDGET = 2;
+    private static final long DETAIL_BUDGET = 1;
+    private static final int PAGE_SIZE = 100;
+
+    private ConfigurableApplicationContext context;
+    private DepartmentService departmentService;
+    private long detailId;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new SpringApplicationBuilder(DepartmentImportPersistenceBenchmark.BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:departments;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.open-in-view=false",
+                        "department.query-count.enabled=true")
+                .run();
+        departmentService = context.getBean(DepartmentService.class);
+        List<Department> departments = DepartmentExcelBenchmark.generateDepartments(1000, 0);
+        departments.forEach(department -> department.setId(null));
+        departmentService.saveAllFromExcel(departments);
+        detailId = departmentService.getDepartments(null, 0, 1).getContent().get(0).getId();
+    }
+
+    @Benchmark
+    public Page<DepartmentSummary> listPage() {
+        DepartmentQueryCounter.reset();
+        Page<DepartmentSummary> page = departmentService.getDepartments(null, 0, PAGE_SIZE);
+        checkBudget("list page", LIST_BUDGET);
+        return page;
+    }
+
+    @Benchmark
+    public DepartmentDetailResponse detail() {
+        DepartmentQueryCounter.reset();
+        DepartmentDetailResponse detail = departmentService.getDepartmentDetail(detailId);
+        checkBudget("detail", DETAIL_BUDGET);
+        return detail;
+    }
+
+    @TearDown(Level.Trial)
+    public void stopContext() {
+        SpringApplication.exit(context);
+    }
+
+    private static void checkBudget(String operation, long budget) {
+        long statements = DepartmentQueryCounter.count();
+        if (statements > budget) {
+            throw new IllegalStateException(operation + " issued " + statements + " statements, budget is " + budget);
+        }
+    }
+}